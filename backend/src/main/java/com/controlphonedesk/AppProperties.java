@@ -10,6 +10,10 @@ import org.springframework.context.annotation.Configuration;
 public class AppProperties {
     private final Adb adb = new Adb();
     private final Scrcpy scrcpy = new Scrcpy();
+    private final Stream stream = new Stream();
+    private final Abr abr = new Abr();
+    private final Recording recording = new Recording();
+    private final Device device = new Device();
     private final Cors cors = new Cors();
     private final Security security = new Security();
 
@@ -23,6 +27,26 @@ public class AppProperties {
         return scrcpy;
     }
 
+    /** 视频流转发相关配置（缓冲池、会话队列等） */
+    public Stream getStream() {
+        return stream;
+    }
+
+    /** 自适应码率配置（拥塞判定阈值、迟滞、多观看者策略） */
+    public Abr getAbr() {
+        return abr;
+    }
+
+    /** 录制配置（目录、分段、内存缓冲上限） */
+    public Recording getRecording() {
+        return recording;
+    }
+
+    /** 设备信息采集相关配置（并发、超时等） */
+    public Device getDevice() {
+        return device;
+    }
+
     /** CORS 允许的来源配置 */
     public Cors getCors() {
         return cors;
@@ -35,6 +59,15 @@ public class AppProperties {
 
     public static class Adb {
         private String bin = "adb";
+        private String mode = "socket";
+        private String host = "127.0.0.1";
+        private int port = 5037;
+        private int maxConnections = 32;
+        private int hostConcurrency = 16;
+        private int deviceConcurrency = 2;
+        private int forwardPortMin = 28183;
+        private int forwardPortMax = 28310;
+        private long forwardGraceSeconds = 30;
 
         /** adb 可执行文件路径 */
         public String getBin() {
@@ -44,6 +77,87 @@ public class AppProperties {
         public void setBin(String bin) {
             this.bin = bin;
         }
+
+        /** 执行方式：socket（直连 adb server）或 process（每条命令 fork adb） */
+        public String getMode() {
+            return mode;
+        }
+
+        public void setMode(String mode) {
+            this.mode = mode;
+        }
+
+        /** adb server 地址 */
+        public String getHost() {
+            return host;
+        }
+
+        public void setHost(String host) {
+            this.host = host;
+        }
+
+        /** adb server 端口 */
+        public int getPort() {
+            return port;
+        }
+
+        public void setPort(int port) {
+            this.port = port;
+        }
+
+        /** 同时打开的 adb server 命令连接上限（socket 模式；设备跟踪长连接不计入） */
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        /** 整机同时执行的 adb 命令上限（不含设备跟踪长连接） */
+        public int getHostConcurrency() {
+            return hostConcurrency;
+        }
+
+        public void setHostConcurrency(int hostConcurrency) {
+            this.hostConcurrency = hostConcurrency;
+        }
+
+        /** 单台设备同时执行的 adb 命令上限 */
+        public int getDeviceConcurrency() {
+            return deviceConcurrency;
+        }
+
+        public void setDeviceConcurrency(int deviceConcurrency) {
+            this.deviceConcurrency = deviceConcurrency;
+        }
+
+        /** adb forward 本机端口范围起点（含），默认避开 scrcpy 桌面端使用的 27183 起的端口 */
+        public int getForwardPortMin() {
+            return forwardPortMin;
+        }
+
+        public void setForwardPortMin(int forwardPortMin) {
+            this.forwardPortMin = forwardPortMin;
+        }
+
+        /** adb forward 本机端口范围终点（含）；启动时会清理该范围内指向 scrcpy.serverPort 的遗留转发 */
+        public int getForwardPortMax() {
+            return forwardPortMax;
+        }
+
+        public void setForwardPortMax(int forwardPortMax) {
+            this.forwardPortMax = forwardPortMax;
+        }
+
+        /** forward 引用归零后延迟删除的时间（秒），期间再次使用可直接复用 */
+        public long getForwardGraceSeconds() {
+            return forwardGraceSeconds;
+        }
+
+        public void setForwardGraceSeconds(long forwardGraceSeconds) {
+            this.forwardGraceSeconds = forwardGraceSeconds;
+        }
     }
 
     public static class Scrcpy {
@@ -53,6 +167,12 @@ public class AppProperties {
         private String serverPackage = "com.genymobile.scrcpy.Server";
         private String serverJarPath = "scrcpy/scrcpy-server.jar";
         private boolean listenOnAllInterfaces = false;
+        private boolean warmPool = false;
+        private int warmPoolParallelism = 4;
+        private long idleTtlSeconds = 600;
+        private int keepWarm = 0;
+        private String keepWarmPolicy = "lru";
+        private String transport = "http-client";
 
         /** scrcpy server 版本号（需与 jar 内一致） */
         public String getServerVersion() {
@@ -107,6 +227,382 @@ public class AppProperties {
         public void setListenOnAllInterfaces(boolean listenOnAllInterfaces) {
             this.listenOnAllInterfaces = listenOnAllInterfaces;
         }
+
+        /** 设备上线时预先启动 server 并建立 adb forward，首个观看者只需 WebSocket 握手；开启后在线设备的 server 不做空闲回收 */
+        public boolean isWarmPool() {
+            return warmPool;
+        }
+
+        public void setWarmPool(boolean warmPool) {
+            this.warmPool = warmPool;
+        }
+
+        /** 预热时同时处理的设备数上限 */
+        public int getWarmPoolParallelism() {
+            return warmPoolParallelism;
+        }
+
+        public void setWarmPoolParallelism(int warmPoolParallelism) {
+            this.warmPoolParallelism = warmPoolParallelism;
+        }
+
+        /** 最后一个观看者离开后 server 保留的时间（秒），0 表示不回收；开启预热池时不生效 */
+        public long getIdleTtlSeconds() {
+            return idleTtlSeconds;
+        }
+
+        public void setIdleTtlSeconds(long idleTtlSeconds) {
+            this.idleTtlSeconds = idleTtlSeconds;
+        }
+
+        /** 即使空闲也保持运行的设备数 */
+        public int getKeepWarm() {
+            return keepWarm;
+        }
+
+        public void setKeepWarm(int keepWarm) {
+            this.keepWarm = keepWarm;
+        }
+
+        /** 保温设备的挑选策略：lru（最近使用）或 lfu（使用次数最多） */
+        public String getKeepWarmPolicy() {
+            return keepWarmPolicy;
+        }
+
+        public void setKeepWarmPolicy(String keepWarmPolicy) {
+            this.keepWarmPolicy = keepWarmPolicy;
+        }
+
+        /** 连接设备侧 WebSocket 的方式：http-client（JDK HttpClient）或 nio（SocketChannel 直连，开销更低） */
+        public String getTransport() {
+            return transport;
+        }
+
+        public void setTransport(String transport) {
+            this.transport = transport;
+        }
+    }
+
+    public static class Stream {
+        private boolean zeroCopyRelay = true;
+        private int bufferPoolMaxMb = 64;
+        private int sessionQueueCapacity = 30;
+        private int gopCacheMaxMb = 8;
+        private long connectTimeoutMs = 10000;
+        private int earlyMessageLimit = 256;
+        private boolean controlCoalescing = true;
+        private long scrollCoalesceWindowMs = 100;
+        private int wallMaxChannels = 128;
+        private long previewIntervalMs = 1000;
+
+        /** 是否使用池化 direct ByteBuffer 转发视频帧（false 时按帧分配堆内存） */
+        public boolean isZeroCopyRelay() {
+            return zeroCopyRelay;
+        }
+
+        public void setZeroCopyRelay(boolean zeroCopyRelay) {
+            this.zeroCopyRelay = zeroCopyRelay;
+        }
+
+        /** 缓冲池最多缓存的空闲内存（MB） */
+        public int getBufferPoolMaxMb() {
+            return bufferPoolMaxMb;
+        }
+
+        public void setBufferPoolMaxMb(int bufferPoolMaxMb) {
+            this.bufferPoolMaxMb = bufferPoolMaxMb;
+        }
+
+        /** 每个浏览器会话最多排队的画面帧数，超出后丢帧直到下一个关键帧 */
+        public int getSessionQueueCapacity() {
+            return sessionQueueCapacity;
+        }
+
+        public void setSessionQueueCapacity(int sessionQueueCapacity) {
+            this.sessionQueueCapacity = sessionQueueCapacity;
+        }
+
+        /** 每台设备缓存当前 GOP（IDR 及后续帧）的上限（MB），供新观看者秒开 */
+        public int getGopCacheMaxMb() {
+            return gopCacheMaxMb;
+        }
+
+        public void setGopCacheMaxMb(int gopCacheMaxMb) {
+            this.gopCacheMaxMb = gopCacheMaxMb;
+        }
+
+        /** 连接设备侧 WebSocket 的总超时（毫秒），期间按退避间隔探测 server 是否就绪 */
+        public long getConnectTimeoutMs() {
+            return connectTimeoutMs;
+        }
+
+        public void setConnectTimeoutMs(long connectTimeoutMs) {
+            this.connectTimeoutMs = connectTimeoutMs;
+        }
+
+        /** 上行就绪前每个浏览器会话最多暂存的消息数，超出的消息丢弃 */
+        public int getEarlyMessageLimit() {
+            return earlyMessageLimit;
+        }
+
+        public void setEarlyMessageLimit(int earlyMessageLimit) {
+            this.earlyMessageLimit = earlyMessageLimit;
+        }
+
+        /** 上行积压时是否合并同一指针的连续触摸 MOVE 与连续滚动 */
+        public boolean isControlCoalescing() {
+            return controlCoalescing;
+        }
+
+        public void setControlCoalescing(boolean controlCoalescing) {
+            this.controlCoalescing = controlCoalescing;
+        }
+
+        /** 连续滚动可合并的时间窗口（毫秒），从被合并的首条消息入队开始计算 */
+        public long getScrollCoalesceWindowMs() {
+            return scrollCoalesceWindowMs;
+        }
+
+        public void setScrollCoalesceWindowMs(long scrollCoalesceWindowMs) {
+            this.scrollCoalesceWindowMs = scrollCoalesceWindowMs;
+        }
+
+        /** 一条设备墙连接（/ws/wall）最多同时订阅的设备通道数 */
+        public int getWallMaxChannels() {
+            return wallMaxChannels;
+        }
+
+        public void setWallMaxChannels(int wallMaxChannels) {
+            this.wallMaxChannels = wallMaxChannels;
+        }
+
+        /** 预览观看者（mode=preview）两个关键帧之间的最小间隔（毫秒） */
+        public long getPreviewIntervalMs() {
+            return previewIntervalMs;
+        }
+
+        public void setPreviewIntervalMs(long previewIntervalMs) {
+            this.previewIntervalMs = previewIntervalMs;
+        }
+    }
+
+    public static class Abr {
+        private boolean enabled = true;
+        private long intervalMs = 1000;
+        private String viewerPolicy = "slowest";
+        private int queueHigh = 10;
+        private int queueLow = 2;
+        private double latencyHighMs = 200;
+        private double latencyLowMs = 50;
+        private double dropRateHigh = 0.02;
+        private int downSamples = 2;
+        private int upSamples = 8;
+        private int minBitrate = 500000;
+
+        /** 是否按观看者拥塞情况自动调整码率、帧率与分辨率 */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /** 采样间隔（毫秒） */
+        public long getIntervalMs() {
+            return intervalMs;
+        }
+
+        public void setIntervalMs(long intervalMs) {
+            this.intervalMs = intervalMs;
+        }
+
+        /** 多个观看者时以谁为准：slowest（最差者）、median（中位数）或 fastest（最好者） */
+        public String getViewerPolicy() {
+            return viewerPolicy;
+        }
+
+        public void setViewerPolicy(String viewerPolicy) {
+            this.viewerPolicy = viewerPolicy;
+        }
+
+        /** 画面帧排队数达到该值视为拥塞 */
+        public int getQueueHigh() {
+            return queueHigh;
+        }
+
+        public void setQueueHigh(int queueHigh) {
+            this.queueHigh = queueHigh;
+        }
+
+        /** 画面帧排队数不超过该值（且延迟低、无丢帧）视为畅通 */
+        public int getQueueLow() {
+            return queueLow;
+        }
+
+        public void setQueueLow(int queueLow) {
+            this.queueLow = queueLow;
+        }
+
+        /** 平均发送延迟（毫秒）达到该值视为拥塞 */
+        public double getLatencyHighMs() {
+            return latencyHighMs;
+        }
+
+        public void setLatencyHighMs(double latencyHighMs) {
+            this.latencyHighMs = latencyHighMs;
+        }
+
+        /** 平均发送延迟（毫秒）不超过该值才可能视为畅通 */
+        public double getLatencyLowMs() {
+            return latencyLowMs;
+        }
+
+        public void setLatencyLowMs(double latencyLowMs) {
+            this.latencyLowMs = latencyLowMs;
+        }
+
+        /** 采样周期内丢帧比例达到该值视为拥塞 */
+        public double getDropRateHigh() {
+            return dropRateHigh;
+        }
+
+        public void setDropRateHigh(double dropRateHigh) {
+            this.dropRateHigh = dropRateHigh;
+        }
+
+        /** 连续多少次拥塞采样后降一档 */
+        public int getDownSamples() {
+            return downSamples;
+        }
+
+        public void setDownSamples(int downSamples) {
+            this.downSamples = downSamples;
+        }
+
+        /** 连续多少次畅通采样后升一档（应明显大于 downSamples，避免来回振荡） */
+        public int getUpSamples() {
+            return upSamples;
+        }
+
+        public void setUpSamples(int upSamples) {
+            this.upSamples = upSamples;
+        }
+
+        /** 降档时的码率下限（bps） */
+        public int getMinBitrate() {
+            return minBitrate;
+        }
+
+        public void setMinBitrate(int minBitrate) {
+            this.minBitrate = minBitrate;
+        }
+    }
+
+    public static class Recording {
+        private String dir = "recordings";
+        private long segmentSeconds = 60;
+        private int segmentMaxMb = 256;
+        private int maxBufferedMb = 16;
+        private long maxDurationMinutes = 60;
+        private long maxTotalMb = 10240;
+
+        /** 录制文件根目录，每次录制为 {dir}/{udid}/{开始时间} */
+        public String getDir() {
+            return dir;
+        }
+
+        public void setDir(String dir) {
+            this.dir = dir;
+        }
+
+        /** 分段时长（秒），到期后在下一个关键帧处切换到新分段 */
+        public long getSegmentSeconds() {
+            return segmentSeconds;
+        }
+
+        public void setSegmentSeconds(long segmentSeconds) {
+            this.segmentSeconds = segmentSeconds;
+        }
+
+        /** 分段大小上限（MB），超过后在下一个关键帧处切换到新分段 */
+        public int getSegmentMaxMb() {
+            return segmentMaxMb;
+        }
+
+        public void setSegmentMaxMb(int segmentMaxMb) {
+            this.segmentMaxMb = segmentMaxMb;
+        }
+
+        /** 每个录制最多在内存中排队等待写盘的数据（MB），超出后丢帧直到下一个关键帧 */
+        public int getMaxBufferedMb() {
+            return maxBufferedMb;
+        }
+
+        public void setMaxBufferedMb(int maxBufferedMb) {
+            this.maxBufferedMb = maxBufferedMb;
+        }
+
+        /** 单次录制最长时长（分钟），到期后在下一个关键帧处结束录制 */
+        public long getMaxDurationMinutes() {
+            return maxDurationMinutes;
+        }
+
+        public void setMaxDurationMinutes(long maxDurationMinutes) {
+            this.maxDurationMinutes = maxDurationMinutes;
+        }
+
+        /** 录制目录总容量上限（MB，含历史录制），达到后拒绝新录制并结束进行中的录制 */
+        public long getMaxTotalMb() {
+            return maxTotalMb;
+        }
+
+        public void setMaxTotalMb(long maxTotalMb) {
+            this.maxTotalMb = maxTotalMb;
+        }
+    }
+
+    public static class Device {
+        private int infoConcurrency = 8;
+        private long infoTimeoutMs = 5000;
+        private long staticTtlSeconds = 600;
+        private long volatileTtlSeconds = 15;
+
+        /** 同时采集设备属性的最大设备数 */
+        public int getInfoConcurrency() {
+            return infoConcurrency;
+        }
+
+        public void setInfoConcurrency(int infoConcurrency) {
+            this.infoConcurrency = infoConcurrency;
+        }
+
+        /** 单台设备属性采集的截止时间（毫秒），超时的设备标记为 stale 返回 */
+        public long getInfoTimeoutMs() {
+            return infoTimeoutMs;
+        }
+
+        public void setInfoTimeoutMs(long infoTimeoutMs) {
+            this.infoTimeoutMs = infoTimeoutMs;
+        }
+
+        /** getprop 静态属性（型号、系统版本、ABI）的缓存时间（秒） */
+        public long getStaticTtlSeconds() {
+            return staticTtlSeconds;
+        }
+
+        public void setStaticTtlSeconds(long staticTtlSeconds) {
+            this.staticTtlSeconds = staticTtlSeconds;
+        }
+
+        /** 网络接口等易变信息的缓存时间（秒） */
+        public long getVolatileTtlSeconds() {
+            return volatileTtlSeconds;
+        }
+
+        public void setVolatileTtlSeconds(long volatileTtlSeconds) {
+            this.volatileTtlSeconds = volatileTtlSeconds;
+        }
     }
 
     public static class Cors {
@@ -0,0 +1,70 @@
+package com.controlphonedesk.adb;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * adb 底层执行方式：fork adb 可执行文件，或直接与 adb server（smart socket 协议）通信。
+ * 统一返回 {@link ProcessResult}，由 {@link AdbService} 负责解析与错误处理。
+ */
+public interface AdbBackend {
+    /**
+     * 设备列表，格式与 `adb devices -l` 的设备行一致。
+     */
+    ProcessResult devices(Duration timeout) throws IOException, InterruptedException;
+
+    /**
+     * 持续跟踪设备变化：每次设备表变化回调一次完整设备行列表，阻塞直到连接断开或线程中断。
+     */
+    void trackDevices(Consumer<List<String>> onUpdate) throws IOException, InterruptedException;
+
+    /**
+     * 在设备上执行 shell 命令，输出合并 stdout/stderr。
+     */
+    ProcessResult shell(String udid, String command, Duration timeout) throws IOException, InterruptedException;
+
+    /**
+     * 异步执行长输出的 shell 命令，输出逐行交给 onLine、不在结果中保留；取消返回的 future 会结束命令。
+     * 默认在虚拟线程上执行同步实现后逐行回调（输出受 {@link ProcessRunner#MAX_OUTPUT_BYTES} 限制）。
+     */
+    default CompletableFuture<ProcessResult> shellStreaming(
+        String udid,
+        String command,
+        Duration timeout,
+        Consumer<String> onLine
+    ) {
+        CompletableFuture<ProcessResult> result = new CompletableFuture<>();
+        Thread.ofVirtual().name("adb-shell-" + udid).start(() -> {
+            try {
+                ProcessResult output = shell(udid, command, timeout);
+                output.output().forEach(onLine);
+                result.complete(new ProcessResult(output.exitCode(), List.of(), output.truncated()));
+            } catch (Exception ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+        return result;
+    }
+
+    ProcessResult forward(String udid, int localPort, String remote, Duration timeout)
+        throws IOException, InterruptedException;
+
+    ProcessResult removeForward(String udid, int localPort, Duration timeout) throws IOException, InterruptedException;
+
+    /**
+     * 所有设备的端口转发，每行格式与 `adb forward --list` 一致：serial local remote。
+     */
+    ProcessResult listForwards(Duration timeout) throws IOException, InterruptedException;
+
+    ProcessResult push(String udid, String localPath, String remotePath, Duration timeout)
+        throws IOException, InterruptedException;
+
+    /**
+     * 设备断开：清除按设备缓存的协议能力，重新接入时重新探测。
+     */
+    default void forgetDevice(String udid) {
+    }
+}
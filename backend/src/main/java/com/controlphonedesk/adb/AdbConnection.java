@@ -0,0 +1,128 @@
+package com.controlphonedesk.adb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 与 adb server 的一条 smart socket 连接。
+ * 请求格式为 4 位十六进制长度 + 内容，应答为 OKAY 或 FAIL + 4 位十六进制长度 + 错误信息。
+ * 按协议每条连接只能承载一次服务请求（transport 切换后被服务独占）。
+ */
+public class AdbConnection implements Closeable {
+    private final Socket socket;
+    private final Runnable onClose;
+    private final DataInputStream input;
+    private final OutputStream output;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    AdbConnection(Socket socket, Runnable onClose) throws IOException {
+        this.socket = socket;
+        this.onClose = onClose;
+        this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 16 * 1024));
+        this.output = new BufferedOutputStream(socket.getOutputStream(), 16 * 1024);
+    }
+
+    /**
+     * 发送一条请求并读取状态；FAIL 时抛出 {@link AdbFailException}。
+     */
+    public void request(String service) throws IOException {
+        byte[] payload = service.getBytes(StandardCharsets.UTF_8);
+        output.write(String.format("%04x", payload.length).getBytes(StandardCharsets.US_ASCII));
+        output.write(payload);
+        output.flush();
+        readStatus();
+    }
+
+    public void readStatus() throws IOException {
+        String status = readAscii(4);
+        if ("OKAY".equals(status)) {
+            return;
+        }
+        if ("FAIL".equals(status)) {
+            throw new AdbFailException(readHexPrefixed());
+        }
+        throw new IOException("Unexpected adb response: " + status);
+    }
+
+    /**
+     * 读取 4 位十六进制长度前缀的字符串（host:devices-l 等的应答体）。
+     */
+    public String readHexPrefixed() throws IOException {
+        int length = Integer.parseInt(readAscii(4), 16);
+        byte[] data = new byte[length];
+        input.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    public String readAscii(int length) throws IOException {
+        byte[] data = new byte[length];
+        input.readFully(data);
+        return new String(data, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 读取小端 int（sync 与 shell v2 协议使用小端）。
+     */
+    public int readIntLe() throws IOException {
+        int b0 = input.read();
+        int b1 = input.read();
+        int b2 = input.read();
+        int b3 = input.read();
+        if ((b0 | b1 | b2 | b3) < 0) {
+            throw new EOFException();
+        }
+        return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+    }
+
+    public void writeIntLe(int value) throws IOException {
+        output.write(value & 0xff);
+        output.write((value >>> 8) & 0xff);
+        output.write((value >>> 16) & 0xff);
+        output.write((value >>> 24) & 0xff);
+    }
+
+    public DataInputStream input() {
+        return input;
+    }
+
+    public OutputStream output() {
+        return output;
+    }
+
+    /**
+     * 读取剩余全部数据直到对端关闭（shell: 旧协议的输出）。
+     */
+    public void setReadTimeout(int millis) throws IOException {
+        socket.setSoTimeout(millis);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed.compareAndSet(false, true)) {
+            try {
+                socket.close();
+            } finally {
+                onClose.run();
+            }
+        }
+    }
+
+    /**
+     * adb server 返回 FAIL。
+     */
+    public static class AdbFailException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public AdbFailException(String message) {
+            super(message);
+        }
+    }
+}
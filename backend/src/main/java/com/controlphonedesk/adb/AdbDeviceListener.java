@@ -0,0 +1,15 @@
+package com.controlphonedesk.adb;
+
+/**
+ * 设备表变化回调（在跟踪线程上同步调用，实现方不应长时间阻塞）。
+ */
+public interface AdbDeviceListener {
+    default void onDeviceAttached(AdbDevice device) {
+    }
+
+    default void onDeviceDetached(AdbDevice device) {
+    }
+
+    default void onDeviceStateChanged(AdbDevice previous, AdbDevice current) {
+    }
+}
@@ -0,0 +1,135 @@
+package com.controlphonedesk.adb;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * 常驻设备跟踪：订阅 adb server 的设备变化推送，维护内存设备表。
+ * REST 接口直接读取设备表，不再每次请求都执行 `adb devices`。
+ */
+@Component
+public class AdbDeviceTracker {
+    private static final Logger log = LoggerFactory.getLogger(AdbDeviceTracker.class);
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+    private final AdbService adbService;
+    private final List<AdbDeviceListener> listeners = new CopyOnWriteArrayList<>();
+    // 按 adb 输出顺序保存；整体替换，读取无需加锁
+    private volatile Map<String, AdbDevice> devices = Map.of();
+    private volatile boolean synced;
+    private volatile boolean running;
+    private Thread worker;
+
+    public AdbDeviceTracker(AdbService adbService) {
+        this.adbService = adbService;
+        // adb 后端按设备缓存的协议能力随设备断开清除
+        listeners.add(adbService);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = Thread.ofVirtual().name("adb-device-tracker").start(this::trackLoop);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    public void addListener(AdbDeviceListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 当前设备列表。跟踪连接尚未建立（启动初期或 adb server 重启中）时直接查询一次。
+     */
+    public List<AdbDevice> getDevices() throws Exception {
+        if (!synced) {
+            return adbService.listDevices();
+        }
+        return new ArrayList<>(devices.values());
+    }
+
+    public AdbDevice getDevice(String udid) {
+        return devices.get(udid);
+    }
+
+    private void trackLoop() {
+        long backoff = 500;
+        while (running) {
+            try {
+                adbService.trackDevices(this::onDeviceList);
+                backoff = 500;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                if (!running) {
+                    return;
+                }
+                log.warn("adb device tracking interrupted, reconnecting: {}", ex.toString());
+            }
+            synced = false;
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    /**
+     * 与上一份设备表比较，分发接入/断开/状态变化事件。
+     */
+    private void onDeviceList(List<AdbDevice> list) {
+        // 重连后与断开前的设备表比较，只补发期间发生的变化
+        Map<String, AdbDevice> previous = devices;
+        Map<String, AdbDevice> current = new LinkedHashMap<>();
+        for (AdbDevice device : list) {
+            current.put(device.getUdid(), device);
+        }
+        devices = current;
+        synced = true;
+        for (AdbDevice device : current.values()) {
+            AdbDevice old = previous.get(device.getUdid());
+            if (old == null) {
+                log.info("Device attached: udid={} state={}", device.getUdid(), device.getState());
+                fire(listener -> listener.onDeviceAttached(device));
+            } else if (!old.getState().equals(device.getState())) {
+                log.info("Device state changed: udid={} {} -> {}", device.getUdid(), old.getState(), device.getState());
+                fire(listener -> listener.onDeviceStateChanged(old, device));
+            }
+        }
+        for (AdbDevice old : previous.values()) {
+            if (!current.containsKey(old.getUdid())) {
+                log.info("Device detached: udid={}", old.getUdid());
+                fire(listener -> listener.onDeviceDetached(old));
+            }
+        }
+    }
+
+    private void fire(Consumer<AdbDeviceListener> event) {
+        for (AdbDeviceListener listener : listeners) {
+            try {
+                event.accept(listener);
+            } catch (Exception ex) {
+                log.warn("Device listener failed: {}", ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.controlphonedesk.adb;
+
+/**
+ * 一条 adb 端口转发（`adb forward --list` 的一行）。
+ */
+public record AdbForward(String serial, String local, String remote) {
+    /**
+     * local 为 tcp:<port> 时返回端口，否则 -1。
+     */
+    public int localTcpPort() {
+        if (!local.startsWith("tcp:")) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(local.substring(4));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
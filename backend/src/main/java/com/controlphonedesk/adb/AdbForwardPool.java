@@ -0,0 +1,248 @@
+package com.controlphonedesk.adb;
+
+import com.controlphonedesk.AppProperties;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * adb forward 复用池：本机端口取自配置的端口范围（位图分配），每个 (udid, remote) 只保留一条转发，
+ * 多个会话按引用计数共用；引用归零后延迟 grace 再删除，期间重新使用无需再次 forward。
+ * 启动时清理范围内上次进程遗留的转发（只清理指向本服务 scrcpy server 端口的，不动其他客户端的转发）。
+ */
+@Component
+public class AdbForwardPool implements AdbDeviceListener {
+    private static final Logger log = LoggerFactory.getLogger(AdbForwardPool.class);
+    private static final int BIND_ATTEMPTS = 5;
+    private static final String STATE_DEVICE = "device";
+
+    private final AdbService adbService;
+    private final AdbDeviceTracker deviceTracker;
+    private final int portMin;
+    private final int portMax;
+    // 本服务建立的转发的设备端目标，启动清理只认这一种
+    private final String ownedRemote;
+    private final Duration grace;
+    private final Executor expiryExecutor;
+    // 以下字段由 this 加锁保护
+    private final BitSet allocated = new BitSet();
+    private final Map<Key, Entry> entries = new HashMap<>();
+    private int cursor;
+
+    public AdbForwardPool(AdbService adbService, AdbDeviceTracker deviceTracker, AppProperties properties) {
+        this.adbService = adbService;
+        this.deviceTracker = deviceTracker;
+        AppProperties.Adb adb = properties.getAdb();
+        this.portMin = adb.getForwardPortMin();
+        this.portMax = Math.max(adb.getForwardPortMin(), adb.getForwardPortMax());
+        this.ownedRemote = "tcp:" + properties.getScrcpy().getServerPort();
+        this.grace = Duration.ofSeconds(Math.max(0, adb.getForwardGraceSeconds()));
+        this.expiryExecutor = CompletableFuture.delayedExecutor(
+            grace.toMillis(), TimeUnit.MILLISECONDS, command -> Thread.ofVirtual().start(command));
+    }
+
+    /**
+     * 清理端口范围内、指向本服务 server 端口的遗留转发（上次进程崩溃未删除的），并订阅设备断开事件。
+     * 同一 adb server 上其他客户端（如 scrcpy 桌面端的 localabstract:scrcpy）的转发即使端口落在范围内也保留。
+     */
+    @PostConstruct
+    public void reconcile() {
+        deviceTracker.addListener(this);
+        try {
+            int removed = 0;
+            for (AdbForward forward : adbService.listForwards()) {
+                int port = forward.localTcpPort();
+                if (port >= portMin && port <= portMax && ownedRemote.equals(forward.remote())) {
+                    adbService.removeForward(forward.serial(), port);
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                log.info("Removed {} orphaned adb forwards in port range {}-{}", removed, portMin, portMax);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            log.warn("Failed to reconcile adb forwards: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * 取得 (udid, remote) 的转发端口并增加引用；已有转发（包括等待删除的）直接复用。
+     */
+    public int acquire(String udid, String remote) throws IOException, InterruptedException {
+        Key key = new Key(udid, remote);
+        Entry entry;
+        boolean creator = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+                creator = true;
+            }
+            entry.refs++;
+            // 使已排期的延迟删除失效
+            entry.generation++;
+        }
+        if (creator) {
+            try {
+                entry.port = bind(udid, remote);
+                boolean dropped;
+                synchronized (this) {
+                    dropped = entries.get(key) != entry;
+                }
+                if (dropped) {
+                    // 建立转发期间设备已离线
+                    adbService.removeForward(udid, entry.port);
+                    freePort(entry.port);
+                    throw new IOException("Device went offline: " + udid);
+                }
+                entry.ready.complete(null);
+            } catch (IOException | InterruptedException | RuntimeException ex) {
+                synchronized (this) {
+                    entries.remove(key, entry);
+                }
+                entry.ready.completeExceptionally(ex);
+                throw ex;
+            }
+            return entry.port;
+        }
+        try {
+            entry.ready.get();
+        } catch (ExecutionException ex) {
+            throw new IOException("adb forward failed: " + ex.getCause().getMessage(), ex.getCause());
+        }
+        return entry.port;
+    }
+
+    /**
+     * 释放一次引用；归零后延迟 grace 删除转发并归还端口。
+     */
+    public void release(String udid, String remote) {
+        Key key = new Key(udid, remote);
+        Entry entry;
+        long generation;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null || --entry.refs > 0) {
+                return;
+            }
+            generation = ++entry.generation;
+        }
+        expiryExecutor.execute(() -> expire(key, entry, generation));
+    }
+
+    public synchronized AdbForwardStats stats() {
+        List<AdbForwardStats.Forward> forwards = new ArrayList<>();
+        entries.forEach((key, entry) ->
+            forwards.add(new AdbForwardStats.Forward(key.udid(), key.remote(), entry.port, entry.refs)));
+        return new AdbForwardStats(portMin, portMax, allocated.cardinality(), forwards);
+    }
+
+    @Override
+    public void onDeviceDetached(AdbDevice device) {
+        dropDevice(device.getUdid());
+    }
+
+    @Override
+    public void onDeviceStateChanged(AdbDevice previous, AdbDevice current) {
+        if (!STATE_DEVICE.equals(current.getState())) {
+            dropDevice(current.getUdid());
+        }
+    }
+
+    /**
+     * 设备离线时其转发已随之失效，立即移除对应条目并归还端口。
+     */
+    private void dropDevice(String udid) {
+        List<Integer> ports = new ArrayList<>();
+        synchronized (this) {
+            entries.entrySet().removeIf(item -> {
+                if (!item.getKey().udid().equals(udid)) {
+                    return false;
+                }
+                if (item.getValue().port > 0) {
+                    ports.add(item.getValue().port);
+                }
+                return true;
+            });
+        }
+        for (int port : ports) {
+            adbService.removeForward(udid, port);
+            freePort(port);
+        }
+    }
+
+    private void expire(Key key, Entry entry, long generation) {
+        synchronized (this) {
+            if (entries.get(key) != entry || entry.refs > 0 || entry.generation != generation) {
+                return;
+            }
+            entries.remove(key);
+        }
+        adbService.removeForward(key.udid(), entry.port);
+        freePort(entry.port);
+    }
+
+    /**
+     * 分配端口并建立转发；端口被其他进程占用时换下一个端口重试。
+     */
+    private int bind(String udid, String remote) throws IOException, InterruptedException {
+        IOException lastError = null;
+        for (int attempt = 0; attempt < BIND_ATTEMPTS; attempt++) {
+            int port = allocatePort();
+            try {
+                adbService.forward(udid, port, remote);
+                return port;
+            } catch (IOException ex) {
+                freePort(port);
+                lastError = ex;
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * 从游标处向后找第一个空闲位（循环），游标随之前移，刚释放的端口不会被立即复用。
+     */
+    private synchronized int allocatePort() throws IOException {
+        int size = portMax - portMin + 1;
+        int index = allocated.nextClearBit(cursor);
+        if (index >= size) {
+            index = allocated.nextClearBit(0);
+        }
+        if (index >= size) {
+            throw new IOException("No free forward port in range " + portMin + "-" + portMax);
+        }
+        allocated.set(index);
+        cursor = (index + 1) % size;
+        return portMin + index;
+    }
+
+    private synchronized void freePort(int port) {
+        allocated.clear(port - portMin);
+    }
+
+    private record Key(String udid, String remote) {
+    }
+
+    private static class Entry {
+        private final CompletableFuture<Void> ready = new CompletableFuture<>();
+        private volatile int port = -1;
+        private int refs;
+        private long generation;
+    }
+}
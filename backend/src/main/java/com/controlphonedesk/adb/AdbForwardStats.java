@@ -0,0 +1,11 @@
+package com.controlphonedesk.adb;
+
+import java.util.List;
+
+/**
+ * 转发池快照：端口范围、已占用端口数与每条转发的引用数。
+ */
+public record AdbForwardStats(int portMin, int portMax, int allocatedPorts, List<Forward> forwards) {
+    public record Forward(String udid, String remote, int localPort, int refs) {
+    }
+}
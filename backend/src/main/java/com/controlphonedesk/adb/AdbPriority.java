@@ -0,0 +1,13 @@
+package com.controlphonedesk.adb;
+
+/**
+ * adb 命令优先级：数值越小越先调度。
+ */
+public enum AdbPriority {
+    /** 用户正在等待的连接操作（启动 server、端口转发、push） */
+    INTERACTIVE,
+    /** 设备控制类 shell 命令 */
+    CONTROL,
+    /** 后台信息采集与轮询（getprop、网络接口、设备列表） */
+    BACKGROUND
+}
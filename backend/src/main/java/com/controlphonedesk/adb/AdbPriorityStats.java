@@ -0,0 +1,14 @@
+package com.controlphonedesk.adb;
+
+/**
+ * 单个优先级的排队统计。
+ */
+public record AdbPriorityStats(
+    AdbPriority priority,
+    int queued,
+    long started,
+    double lastWaitMs,
+    double avgWaitMs,
+    double maxWaitMs
+) {
+}
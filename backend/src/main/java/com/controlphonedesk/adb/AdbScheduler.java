@@ -0,0 +1,246 @@
+package com.controlphonedesk.adb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * adb 命令调度：按 udid 排队，限制单设备与整机并发，并按优先级（交互 > 控制 > 后台）放行。
+ * 后台命令最多占用上限减一的名额，始终为交互/控制命令留出一个位置，
+ * 因此再多的面板轮询也不会让“连接设备”排在 getprop 之后。
+ */
+public class AdbScheduler {
+    private static final Comparator<Waiter> ORDER = Comparator
+        .comparing((Waiter waiter) -> waiter.priority)
+        .thenComparingLong(waiter -> waiter.sequence);
+
+    private final int hostLimit;
+    private final int deviceLimit;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TreeSet<Waiter> waiters = new TreeSet<>(ORDER);
+    private final Map<String, Integer> deviceRunning = new HashMap<>();
+    private final Map<AdbPriority, Counters> counters = new EnumMap<>(AdbPriority.class);
+    private int hostRunning;
+    private long sequence;
+
+    public AdbScheduler(int hostLimit, int deviceLimit) {
+        this.hostLimit = Math.max(1, hostLimit);
+        this.deviceLimit = Math.max(1, deviceLimit);
+        for (AdbPriority priority : AdbPriority.values()) {
+            counters.put(priority, new Counters());
+        }
+    }
+
+    /**
+     * 排队取得执行名额后在当前线程执行 call。udid 为空表示与设备无关的命令，只受整机上限约束。
+     */
+    public <T> T call(String udid, AdbPriority priority, AdbCall<T> call) throws IOException, InterruptedException {
+        acquire(udid, priority);
+        try {
+            return call.call();
+        } finally {
+            release(udid);
+        }
+    }
+
+    /**
+     * 异步版本：在虚拟线程上排队，拿到名额后启动异步操作，完成时归还名额；
+     * 取消返回的 future 会同时取消已启动的操作（进程随之结束）。
+     */
+    public <T> CompletableFuture<T> submit(String udid, AdbPriority priority, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Thread.ofVirtual().name("adb-queue-" + udid).start(() -> {
+            try {
+                acquire(udid, priority);
+            } catch (InterruptedException ex) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            if (result.isDone()) {
+                // 排队期间已被取消
+                release(udid);
+                return;
+            }
+            CompletableFuture<T> running;
+            try {
+                running = call.get();
+            } catch (RuntimeException ex) {
+                release(udid);
+                result.completeExceptionally(ex);
+                return;
+            }
+            running.whenComplete((value, error) -> {
+                release(udid);
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+            result.whenComplete((value, error) -> {
+                if (error instanceof CancellationException) {
+                    running.cancel(true);
+                }
+            });
+        });
+        return result;
+    }
+
+    public AdbSchedulerStats stats() {
+        List<AdbPriorityStats> priorities = new ArrayList<>();
+        lock.lock();
+        try {
+            Map<AdbPriority, Integer> queued = new EnumMap<>(AdbPriority.class);
+            for (Waiter waiter : waiters) {
+                queued.merge(waiter.priority, 1, Integer::sum);
+            }
+            for (AdbPriority priority : AdbPriority.values()) {
+                priorities.add(counters.get(priority).snapshot(priority, queued.getOrDefault(priority, 0)));
+            }
+            return new AdbSchedulerStats(hostLimit, deviceLimit, hostRunning, priorities);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acquire(String udid, AdbPriority priority) throws InterruptedException {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            Waiter waiter = new Waiter(udid, priority, sequence++, lock.newCondition());
+            waiters.add(waiter);
+            dispatch();
+            try {
+                while (!waiter.granted) {
+                    waiter.condition.await();
+                }
+            } catch (InterruptedException ex) {
+                if (waiter.granted) {
+                    releaseLocked(udid);
+                } else {
+                    waiters.remove(waiter);
+                }
+                throw ex;
+            }
+            counters.get(priority).record(System.nanoTime() - start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(String udid) {
+        lock.lock();
+        try {
+            releaseLocked(udid);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseLocked(String udid) {
+        hostRunning--;
+        if (udid != null) {
+            deviceRunning.computeIfPresent(udid, (key, running) -> running > 1 ? running - 1 : null);
+        }
+        dispatch();
+    }
+
+    /**
+     * 按优先级、先来后到的顺序放行所有当前可以执行的等待者（设备满额的等待者不阻塞其他设备）。
+     */
+    private void dispatch() {
+        Iterator<Waiter> iterator = waiters.iterator();
+        while (iterator.hasNext() && hostRunning < hostLimit) {
+            Waiter waiter = iterator.next();
+            if (!canRun(waiter)) {
+                continue;
+            }
+            iterator.remove();
+            hostRunning++;
+            if (waiter.udid != null) {
+                deviceRunning.merge(waiter.udid, 1, Integer::sum);
+            }
+            waiter.granted = true;
+            waiter.condition.signal();
+        }
+    }
+
+    private boolean canRun(Waiter waiter) {
+        if (hostRunning >= limitFor(hostLimit, waiter.priority)) {
+            return false;
+        }
+        if (waiter.udid == null) {
+            return true;
+        }
+        return deviceRunning.getOrDefault(waiter.udid, 0) < limitFor(deviceLimit, waiter.priority);
+    }
+
+    private static int limitFor(int limit, AdbPriority priority) {
+        return priority == AdbPriority.BACKGROUND && limit > 1 ? limit - 1 : limit;
+    }
+
+    @FunctionalInterface
+    public interface AdbCall<T> {
+        T call() throws IOException, InterruptedException;
+    }
+
+    private static class Waiter {
+        private final String udid;
+        private final AdbPriority priority;
+        private final long sequence;
+        private final Condition condition;
+        private boolean granted;
+
+        Waiter(String udid, AdbPriority priority, long sequence, Condition condition) {
+            this.udid = udid;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * 排队耗时统计（在调度锁内更新）。
+     */
+    private static class Counters {
+        private long started;
+        private long lastNanos;
+        private long totalNanos;
+        private long maxNanos;
+
+        void record(long nanos) {
+            started++;
+            lastNanos = nanos;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        AdbPriorityStats snapshot(AdbPriority priority, int queued) {
+            long count = started;
+            return new AdbPriorityStats(
+                priority,
+                queued,
+                count,
+                toMillis(lastNanos),
+                count == 0 ? 0 : toMillis(totalNanos / count),
+                toMillis(maxNanos)
+            );
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
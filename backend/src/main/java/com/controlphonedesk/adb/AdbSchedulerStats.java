@@ -0,0 +1,14 @@
+package com.controlphonedesk.adb;
+
+import java.util.List;
+
+/**
+ * adb 调度器快照：主机/单设备并发上限、当前执行数与各优先级排队情况。
+ */
+public record AdbSchedulerStats(
+    int hostLimit,
+    int deviceLimit,
+    int hostRunning,
+    List<AdbPriorityStats> priorities
+) {
+}
@@ -8,33 +8,58 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.springframework.stereotype.Service;
 
 @Service
-public class AdbService {
+public class AdbService implements AdbDeviceListener {
     private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
     private static final Pattern PROP_PATTERN = Pattern.compile("\\[(.+?)]\\s*:\\s*\\[(.*?)]");
 
-    private final String adbBin;
+    private final AdbBackend backend;
+    private final AdbScheduler scheduler;
 
     public AdbService(AppProperties properties) {
-        this.adbBin = properties.getAdb().getBin();
+        AppProperties.Adb adb = properties.getAdb();
+        this.scheduler = new AdbScheduler(adb.getHostConcurrency(), adb.getDeviceConcurrency());
+        if ("process".equalsIgnoreCase(adb.getMode())) {
+            this.backend = new ProcessAdbBackend(adb.getBin());
+        } else {
+            this.backend = new SocketAdbBackend(adb.getHost(), adb.getPort(), adb.getBin(), adb.getMaxConnections());
+        }
+    }
+
+    @Override
+    public void onDeviceDetached(AdbDevice device) {
+        backend.forgetDevice(device.getUdid());
     }
 
     /**
      * 获取当前 adb 识别到的设备列表。
-     * 输出格式来自 `adb devices -l`。
+     * 输出格式来自 `adb devices -l`（或 host:devices-l）。
      */
     public List<AdbDevice> listDevices() throws IOException, InterruptedException {
-        List<String> command = List.of(adbBin, "devices", "-l");
-        ProcessResult result = ProcessRunner.run(command, DEFAULT_TIMEOUT);
+        ProcessResult result = scheduler.call(null, AdbPriority.BACKGROUND, () -> backend.devices(DEFAULT_TIMEOUT));
         if (result.exitCode() != 0) {
             throw new IOException("adb devices failed: " + String.join("\n", result.output()));
         }
+        return parseDevices(result.output());
+    }
+
+    /**
+     * 订阅设备变化（阻塞调用，连接断开时抛出异常，由调用方重连）。
+     */
+    public void trackDevices(Consumer<List<AdbDevice>> onUpdate) throws IOException, InterruptedException {
+        backend.trackDevices(lines -> onUpdate.accept(parseDevices(lines)));
+    }
+
+    private static List<AdbDevice> parseDevices(List<String> lines) {
         List<AdbDevice> devices = new ArrayList<>();
-        for (String line : result.output()) {
+        for (String line : lines) {
             line = line.trim();
             if (line.isEmpty() || line.startsWith("List of devices")) {
                 continue;
@@ -60,35 +85,45 @@ public class AdbService {
      * 读取设备属性（getprop），用于型号、版本等信息展示。
      */
     public Map<String, String> getProps(String udid) throws IOException, InterruptedException {
-        List<String> command = List.of(adbBin, "-s", udid, "shell", "getprop");
-        ProcessResult result = ProcessRunner.run(command, DEFAULT_TIMEOUT);
-        if (result.exitCode() != 0) {
-            throw new IOException("adb getprop failed: " + String.join("\n", result.output()));
-        }
+        return getProps(udid, DEFAULT_TIMEOUT);
+    }
+
+    public Map<String, String> getProps(String udid, Duration timeout) throws IOException, InterruptedException {
+        return ProcessRunner.await(getPropsAsync(udid, timeout));
+    }
+
+    /**
+     * 异步读取设备属性：getprop 输出较长，逐行解析而不保留原始输出；调用方线程不等待设备。
+     */
+    public CompletableFuture<Map<String, String>> getPropsAsync(String udid, Duration timeout) {
+        // 回调只在单个读取线程上执行，结果经 future 完成后再交给调用方
         Map<String, String> props = new HashMap<>();
-        for (String line : result.output()) {
+        List<String> unparsed = new ArrayList<>();
+        return scheduler.submit(udid, AdbPriority.BACKGROUND, () -> backend.shellStreaming(udid, "getprop", timeout, line -> {
             Matcher matcher = PROP_PATTERN.matcher(line);
             if (matcher.find()) {
                 props.put(matcher.group(1), matcher.group(2));
+            } else if (unparsed.size() < 10) {
+                unparsed.add(line);
             }
-        }
-        return props;
+        })).thenApply(result -> {
+            if (result.exitCode() != 0) {
+                throw new CompletionException(new IOException("adb getprop failed: " + String.join("\n", unparsed)));
+            }
+            return props;
+        });
     }
 
     /**
      * 获取设备 IP 列表（用于展示网络接口）。
      */
     public List<NetInterfaceInfo> getInterfaces(String udid) throws IOException, InterruptedException {
-        List<String> command = List.of(
-            adbBin,
-            "-s",
-            udid,
-            "shell",
-            "sh",
-            "-c",
-            "ip -4 -f inet -o a | grep 'scope global'"
-        );
-        ProcessResult result = ProcessRunner.run(command, DEFAULT_TIMEOUT);
+        return getInterfaces(udid, DEFAULT_TIMEOUT);
+    }
+
+    public List<NetInterfaceInfo> getInterfaces(String udid, Duration timeout) throws IOException, InterruptedException {
+        ProcessResult result = scheduler.call(udid, AdbPriority.BACKGROUND,
+            () -> backend.shell(udid, "ip -4 -f inet -o a | grep 'scope global'", timeout));
         if (result.exitCode() != 0) {
             return List.of();
         }
@@ -110,8 +145,8 @@ public class AdbService {
      * 建立 adb 端口转发：本机 tcp:localPort -> 设备 remote。
      */
     public void forward(String udid, int localPort, String remote) throws IOException, InterruptedException {
-        List<String> command = List.of(adbBin, "-s", udid, "forward", "tcp:" + localPort, remote);
-        ProcessResult result = ProcessRunner.run(command, DEFAULT_TIMEOUT);
+        ProcessResult result = scheduler.call(udid, AdbPriority.INTERACTIVE,
+            () -> backend.forward(udid, localPort, remote, DEFAULT_TIMEOUT));
         if (result.exitCode() != 0) {
             throw new IOException("adb forward failed: " + String.join("\n", result.output()));
         }
@@ -122,18 +157,35 @@ public class AdbService {
      */
     public void removeForward(String udid, int localPort) {
         try {
-            List<String> command = List.of(adbBin, "-s", udid, "forward", "--remove", "tcp:" + localPort);
-            ProcessRunner.run(command, DEFAULT_TIMEOUT);
+            scheduler.call(udid, AdbPriority.INTERACTIVE, () -> backend.removeForward(udid, localPort, DEFAULT_TIMEOUT));
         } catch (Exception ignored) {
         }
     }
 
+    /**
+     * 列出 adb server 上的所有端口转发。
+     */
+    public List<AdbForward> listForwards() throws IOException, InterruptedException {
+        ProcessResult result = scheduler.call(null, AdbPriority.BACKGROUND, () -> backend.listForwards(DEFAULT_TIMEOUT));
+        if (result.exitCode() != 0) {
+            throw new IOException("adb forward --list failed: " + String.join("\n", result.output()));
+        }
+        List<AdbForward> forwards = new ArrayList<>();
+        for (String line : result.output()) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length >= 3) {
+                forwards.add(new AdbForward(parts[0], parts[1], parts[2]));
+            }
+        }
+        return forwards;
+    }
+
     /**
      * push 本地文件到设备指定路径。
      */
     public void pushFile(String udid, String localPath, String remotePath) throws IOException, InterruptedException {
-        List<String> command = List.of(adbBin, "-s", udid, "push", localPath, remotePath);
-        ProcessResult result = ProcessRunner.run(command, Duration.ofSeconds(30));
+        ProcessResult result = scheduler.call(udid, AdbPriority.INTERACTIVE,
+            () -> backend.push(udid, localPath, remotePath, Duration.ofSeconds(30)));
         if (result.exitCode() != 0) {
             throw new IOException("adb push failed: " + String.join("\n", result.output()));
         }
@@ -143,10 +195,33 @@ public class AdbService {
      * 执行 adb shell 命令（短命令）。
      */
     public void shell(String udid, String commandStr) throws IOException, InterruptedException {
-        List<String> command = List.of(adbBin, "-s", udid, "shell", commandStr);
-        ProcessResult result = ProcessRunner.run(command, Duration.ofSeconds(10));
+        shell(udid, commandStr, AdbPriority.CONTROL);
+    }
+
+    public void shell(String udid, String commandStr, AdbPriority priority) throws IOException, InterruptedException {
+        ProcessResult result = scheduler.call(udid, priority, () -> backend.shell(udid, commandStr, Duration.ofSeconds(10)));
         if (result.exitCode() != 0) {
             throw new IOException("adb shell failed: " + String.join("\n", result.output()));
         }
     }
+
+    /**
+     * 执行 adb shell 命令并返回输出文本（不校验退出码）。
+     */
+    public String shellOutput(String udid, String commandStr, Duration timeout) throws IOException, InterruptedException {
+        return shellOutput(udid, commandStr, timeout, AdbPriority.CONTROL);
+    }
+
+    public String shellOutput(String udid, String commandStr, Duration timeout, AdbPriority priority)
+        throws IOException, InterruptedException {
+        ProcessResult result = scheduler.call(udid, priority, () -> backend.shell(udid, commandStr, timeout));
+        return String.join("\n", result.output()).trim();
+    }
+
+    /**
+     * adb 命令调度器的并发与排队统计。
+     */
+    public AdbSchedulerStats schedulerStats() {
+        return scheduler.stats();
+    }
 }
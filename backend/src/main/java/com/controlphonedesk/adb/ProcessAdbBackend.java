@@ -0,0 +1,85 @@
+package com.controlphonedesk.adb;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * 每条命令 fork 一个 adb 进程（兼容模式）。
+ */
+public class ProcessAdbBackend implements AdbBackend {
+    private static final Duration TRACK_POLL_INTERVAL = Duration.ofSeconds(2);
+
+    private final String adbBin;
+
+    public ProcessAdbBackend(String adbBin) {
+        this.adbBin = adbBin;
+    }
+
+    @Override
+    public ProcessResult devices(Duration timeout) throws IOException, InterruptedException {
+        return ProcessRunner.run(List.of(adbBin, "devices", "-l"), timeout);
+    }
+
+    /**
+     * 进程模式没有长连接，退化为定时轮询 `adb devices -l`，仅在列表变化时回调。
+     */
+    @Override
+    public void trackDevices(Consumer<List<String>> onUpdate) throws IOException, InterruptedException {
+        List<String> previous = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            ProcessResult result = devices(TRACK_POLL_INTERVAL.multipliedBy(5));
+            if (result.exitCode() != 0) {
+                throw new IOException("adb devices failed: " + String.join("\n", result.output()));
+            }
+            if (!result.output().equals(previous)) {
+                previous = result.output();
+                onUpdate.accept(previous);
+            }
+            Thread.sleep(TRACK_POLL_INTERVAL.toMillis());
+        }
+    }
+
+    @Override
+    public ProcessResult shell(String udid, String command, Duration timeout) throws IOException, InterruptedException {
+        return ProcessRunner.run(List.of(adbBin, "-s", udid, "shell", command), timeout);
+    }
+
+    /**
+     * 进程模式下直接逐行读取 adb 输出，长输出不占内存上限。
+     */
+    @Override
+    public CompletableFuture<ProcessResult> shellStreaming(
+        String udid,
+        String command,
+        Duration timeout,
+        Consumer<String> onLine
+    ) {
+        return ProcessRunner.runAsync(List.of(adbBin, "-s", udid, "shell", command), timeout, onLine);
+    }
+
+    @Override
+    public ProcessResult forward(String udid, int localPort, String remote, Duration timeout)
+        throws IOException, InterruptedException {
+        return ProcessRunner.run(List.of(adbBin, "-s", udid, "forward", "tcp:" + localPort, remote), timeout);
+    }
+
+    @Override
+    public ProcessResult removeForward(String udid, int localPort, Duration timeout)
+        throws IOException, InterruptedException {
+        return ProcessRunner.run(List.of(adbBin, "-s", udid, "forward", "--remove", "tcp:" + localPort), timeout);
+    }
+
+    @Override
+    public ProcessResult listForwards(Duration timeout) throws IOException, InterruptedException {
+        return ProcessRunner.run(List.of(adbBin, "forward", "--list"), timeout);
+    }
+
+    @Override
+    public ProcessResult push(String udid, String localPath, String remotePath, Duration timeout)
+        throws IOException, InterruptedException {
+        return ProcessRunner.run(List.of(adbBin, "-s", udid, "push", localPath, remotePath), timeout);
+    }
+}
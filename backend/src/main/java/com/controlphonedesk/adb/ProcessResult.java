@@ -2,5 +2,11 @@ package com.controlphonedesk.adb;
 
 import java.util.List;
 
-public record ProcessResult(int exitCode, List<String> output) {
+/**
+ * 命令执行结果；truncated 表示输出超过上限被截断。
+ */
+public record ProcessResult(int exitCode, List<String> output, boolean truncated) {
+    public ProcessResult(int exitCode, List<String> output) {
+        this(exitCode, output, false);
+    }
 }
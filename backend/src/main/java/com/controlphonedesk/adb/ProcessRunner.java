@@ -3,31 +3,132 @@ package com.controlphonedesk.adb;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+/**
+ * 外部进程执行器：进程运行期间由虚拟线程持续读取输出（不会因管道写满而卡死子进程），
+ * 结果以 {@link CompletableFuture} 返回；超时或取消时强制结束进程及其子进程。
+ */
 public class ProcessRunner {
+    /** 单条命令最多保留的输出字节数（按 UTF-8 编码计），超出部分继续读取但丢弃 */
+    public static final int MAX_OUTPUT_BYTES = 4 * 1024 * 1024;
+
     public static ProcessResult run(List<String> command, Duration timeout) throws IOException, InterruptedException {
+        return await(runAsync(command, timeout));
+    }
+
+    public static CompletableFuture<ProcessResult> runAsync(List<String> command, Duration timeout) {
+        return runAsync(command, timeout, null);
+    }
+
+    /**
+     * 异步执行命令。onLine 不为空时在读取线程上逐行回调且不在结果中保留输出（适合长输出），否则按上限收集。
+     */
+    public static CompletableFuture<ProcessResult> runAsync(
+        List<String> command,
+        Duration timeout,
+        Consumer<String> onLine
+    ) {
         ProcessBuilder builder = new ProcessBuilder(command);
         builder.redirectErrorStream(true);
-        Process process = builder.start();
+        Process process;
+        try {
+            process = builder.start();
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        CompletableFuture<ProcessResult> result = new CompletableFuture<>();
+        Thread.ofVirtual()
+            .name("process-" + process.pid())
+            .start(() -> drain(process, onLine, result));
+        CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS).execute(() ->
+            result.completeExceptionally(new IOException("Command timeout: " + String.join(" ", command))));
+        // 超时、取消或读取失败：结束进程，读取线程随管道关闭退出
+        result.whenComplete((ignored, error) -> {
+            if (error != null) {
+                destroy(process);
+            }
+        });
+        return result;
+    }
 
-        boolean finished = process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS);
-        if (!finished) {
-            process.destroyForcibly();
-            throw new IOException("Command timeout: " + String.join(" ", command));
+    /**
+     * 同步等待异步结果，把执行异常还原为 IOException；等待被中断时取消 future（进程随之结束）。
+     */
+    public static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            throw ex;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(cause.getMessage(), cause);
         }
+    }
 
+    private static void drain(Process process, Consumer<String> onLine, CompletableFuture<ProcessResult> result) {
         List<String> output = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+        long bytes = 0;
+        boolean truncated = false;
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
             String line;
             while ((line = reader.readLine()) != null) {
+                if (onLine != null) {
+                    onLine.accept(line);
+                    continue;
+                }
+                bytes += utf8Length(line) + 1;
+                if (bytes > MAX_OUTPUT_BYTES) {
+                    truncated = true;
+                    continue;
+                }
                 output.add(line);
             }
+            result.complete(new ProcessResult(process.waitFor(), output, truncated));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(ex);
+        } catch (Exception ex) {
+            result.completeExceptionally(ex);
         }
+    }
+
+    /**
+     * 行内容按 UTF-8 编码后的字节数（不实际编码，代理对计 4 字节）。
+     */
+    private static int utf8Length(String line) {
+        int bytes = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < line.length()
+                && Character.isLowSurrogate(line.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
 
-        return new ProcessResult(process.exitValue(), output);
+    private static void destroy(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
     }
 }
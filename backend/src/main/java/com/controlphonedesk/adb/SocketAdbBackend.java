@@ -0,0 +1,386 @@
+package com.controlphonedesk.adb;
+
+import com.controlphonedesk.adb.AdbConnection.AdbFailException;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 直接与本机 adb server（默认 127.0.0.1:5037）通信的纯 Java 客户端，不再为每条命令 fork adb 进程。
+ * 支持 host:devices-l、host:transport + shell v2 / shell、sync: push、host-serial 端口转发与 host:list-forward。
+ * 协议规定每条连接只服务一次请求，因此这里限制并发连接数而不是复用连接。
+ */
+public class SocketAdbBackend implements AdbBackend {
+    private static final Logger log = LoggerFactory.getLogger(SocketAdbBackend.class);
+    private static final int SHELL_STDOUT = 1;
+    private static final int SHELL_STDERR = 2;
+    private static final int SHELL_EXIT = 3;
+    private static final int SYNC_CHUNK = 64 * 1024;
+    private static final int FILE_MODE = 0100644;
+    // 旧协议 shell: 没有退出码，命令后追加 echo 把 $? 带回来
+    private static final String EXIT_MARKER = "__adb_exit:";
+    private static final int LEGACY_READ_CHUNK = 8 * 1024;
+    private static final int LEGACY_TAIL_BYTES = 128;
+
+    private final String host;
+    private final int port;
+    private final String adbBin;
+    private final Semaphore permits;
+    // 设备是否支持 shell v2（按 features 判断），不支持的旧系统回退到 shell: 协议；设备断开时清除
+    private final Map<String, Boolean> shellV2Support = new ConcurrentHashMap<>();
+    private final Object startLock = new Object();
+
+    public SocketAdbBackend(String host, int port, String adbBin, int maxConnections) {
+        this.host = host;
+        this.port = port;
+        this.adbBin = adbBin;
+        this.permits = new Semaphore(Math.max(1, maxConnections));
+    }
+
+    @Override
+    public ProcessResult devices(Duration timeout) throws IOException, InterruptedException {
+        try (AdbConnection connection = open(timeout)) {
+            connection.request("host:devices-l");
+            return new ProcessResult(0, toLines(connection.readHexPrefixed()));
+        } catch (AdbFailException ex) {
+            return failure(ex);
+        }
+    }
+
+    /**
+     * host:track-devices-l：server 在设备表变化时推送完整列表（4 位十六进制长度前缀）。
+     * 旧版 adb server 不支持 -l 时回退到 host:track-devices。
+     * 长连接不占用 maxConnections 名额，否则会在整个进程生命周期内少一个命令连接。
+     */
+    @Override
+    public void trackDevices(Consumer<List<String>> onUpdate) throws IOException, InterruptedException {
+        boolean longFormat = true;
+        while (true) {
+            try (AdbConnection connection = openUnlimited(Duration.ofSeconds(5))) {
+                connection.request(longFormat ? "host:track-devices-l" : "host:track-devices");
+                // 长连接：读取不设超时，直到 server 关闭
+                connection.setReadTimeout(0);
+                while (true) {
+                    onUpdate.accept(toLines(connection.readHexPrefixed()));
+                }
+            } catch (AdbFailException ex) {
+                if (!longFormat) {
+                    throw ex;
+                }
+                longFormat = false;
+            }
+        }
+    }
+
+    @Override
+    public ProcessResult shell(String udid, String command, Duration timeout) throws IOException, InterruptedException {
+        if (!supportsShellV2(udid, timeout)) {
+            return legacyShell(udid, command, timeout);
+        }
+        try (AdbConnection connection = open(timeout)) {
+            connection.request("host:transport:" + udid);
+            connection.request("shell,v2,raw:" + command);
+            return readShellV2(connection, timeout);
+        } catch (AdbFailException ex) {
+            return failure(ex);
+        }
+    }
+
+    @Override
+    public void forgetDevice(String udid) {
+        shellV2Support.remove(udid);
+    }
+
+    @Override
+    public ProcessResult forward(String udid, int localPort, String remote, Duration timeout)
+        throws IOException, InterruptedException {
+        return hostSerial(udid, "forward:tcp:" + localPort + ";" + remote, timeout);
+    }
+
+    @Override
+    public ProcessResult removeForward(String udid, int localPort, Duration timeout)
+        throws IOException, InterruptedException {
+        return hostSerial(udid, "killforward:tcp:" + localPort, timeout);
+    }
+
+    @Override
+    public ProcessResult listForwards(Duration timeout) throws IOException, InterruptedException {
+        try (AdbConnection connection = open(timeout)) {
+            connection.request("host:list-forward");
+            return new ProcessResult(0, toLines(connection.readHexPrefixed()));
+        } catch (AdbFailException ex) {
+            return failure(ex);
+        }
+    }
+
+    @Override
+    public ProcessResult push(String udid, String localPath, String remotePath, Duration timeout)
+        throws IOException, InterruptedException {
+        Path local = Paths.get(localPath);
+        try (AdbConnection connection = open(timeout)) {
+            connection.request("host:transport:" + udid);
+            connection.request("sync:");
+            OutputStream output = connection.output();
+            byte[] header = (remotePath + "," + FILE_MODE).getBytes(StandardCharsets.UTF_8);
+            output.write("SEND".getBytes(StandardCharsets.US_ASCII));
+            connection.writeIntLe(header.length);
+            output.write(header);
+            byte[] chunk = new byte[SYNC_CHUNK];
+            try (InputStream input = Files.newInputStream(local)) {
+                int read;
+                while ((read = input.readNBytes(chunk, 0, chunk.length)) > 0) {
+                    output.write("DATA".getBytes(StandardCharsets.US_ASCII));
+                    connection.writeIntLe(read);
+                    output.write(chunk, 0, read);
+                }
+            }
+            output.write("DONE".getBytes(StandardCharsets.US_ASCII));
+            connection.writeIntLe((int) (Files.getLastModifiedTime(local).toMillis() / 1000));
+            output.flush();
+            String status = connection.readAscii(4);
+            int length = connection.readIntLe();
+            if ("FAIL".equals(status)) {
+                byte[] message = new byte[length];
+                connection.input().readFully(message);
+                return new ProcessResult(1, List.of(new String(message, StandardCharsets.UTF_8)));
+            }
+            if (!"OKAY".equals(status)) {
+                throw new IOException("Unexpected sync response: " + status);
+            }
+            output.write("QUIT".getBytes(StandardCharsets.US_ASCII));
+            connection.writeIntLe(0);
+            output.flush();
+            return new ProcessResult(0, List.of());
+        } catch (AdbFailException ex) {
+            return failure(ex);
+        }
+    }
+
+    /**
+     * 建立到 adb server 的连接；server 未启动时执行一次 `adb start-server` 后重试。
+     */
+    AdbConnection open(Duration timeout) throws IOException, InterruptedException {
+        if (!permits.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            throw new IOException("adb connection limit reached");
+        }
+        try {
+            Socket socket;
+            try {
+                socket = connect(timeout);
+            } catch (ConnectException ex) {
+                startServer();
+                socket = connect(timeout);
+            }
+            return new AdbConnection(socket, permits::release);
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * 不受连接数限制的连接，只用于设备跟踪长连接。
+     */
+    private AdbConnection openUnlimited(Duration timeout) throws IOException, InterruptedException {
+        Socket socket;
+        try {
+            socket = connect(timeout);
+        } catch (ConnectException ex) {
+            startServer();
+            socket = connect(timeout);
+        }
+        try {
+            return new AdbConnection(socket, () -> { });
+        } catch (IOException | RuntimeException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    private Socket connect(Duration timeout) throws IOException {
+        Socket socket = new Socket();
+        try {
+            int millis = (int) Math.min(Integer.MAX_VALUE, timeout.toMillis());
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), millis);
+            socket.setSoTimeout(millis);
+            return socket;
+        } catch (IOException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    private void startServer() throws IOException, InterruptedException {
+        synchronized (startLock) {
+            log.info("adb server not reachable at {}:{}, starting it", host, port);
+            ProcessRunner.run(List.of(adbBin, "start-server"), Duration.ofSeconds(15));
+        }
+    }
+
+    private ProcessResult hostSerial(String udid, String service, Duration timeout)
+        throws IOException, InterruptedException {
+        try (AdbConnection connection = open(timeout)) {
+            connection.request("host-serial:" + udid + ":" + service);
+            // forward 成功时 server 可能再回一个 OKAY（绑定完成），失败则为 FAIL
+            try {
+                connection.readStatus();
+            } catch (EOFException ignored) {
+            }
+            return new ProcessResult(0, List.of());
+        } catch (AdbFailException ex) {
+            return failure(ex);
+        }
+    }
+
+    /**
+     * 通过 host-serial:features 判断设备是否支持 shell v2，结果按设备缓存。
+     * 设备离线等暂时性失败不缓存，按支持处理（shell 请求自身会返回真实错误）；
+     * 只有 server 不认识 features 服务（早于 shell v2 的旧版本）时才确定回退。
+     */
+    private boolean supportsShellV2(String udid, Duration timeout) throws IOException, InterruptedException {
+        Boolean known = shellV2Support.get(udid);
+        if (known != null) {
+            return known;
+        }
+        try (AdbConnection connection = open(timeout)) {
+            connection.request("host-serial:" + udid + ":features");
+            boolean supported = Arrays.asList(connection.readHexPrefixed().trim().split(",")).contains("shell_v2");
+            shellV2Support.put(udid, supported);
+            return supported;
+        } catch (AdbFailException ex) {
+            String message = ex.getMessage() == null ? "" : ex.getMessage();
+            if (message.contains("unknown host service")) {
+                shellV2Support.put(udid, false);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * shell v2：[id:1][len:4 LE][data]，id=3 的包携带退出码。
+     */
+    private ProcessResult readShellV2(AdbConnection connection, Duration timeout) throws IOException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        boolean truncated = false;
+        while (true) {
+            if (System.nanoTime() > deadline) {
+                throw new IOException("adb shell timeout");
+            }
+            int id = connection.input().read();
+            if (id < 0) {
+                throw new IOException("adb shell closed before exit status");
+            }
+            int length = connection.readIntLe();
+            byte[] data = new byte[length];
+            connection.input().readFully(data);
+            if (id == SHELL_STDOUT || id == SHELL_STDERR) {
+                // 与进程模式一致：超过上限后继续读取但丢弃
+                if (output.size() + length <= ProcessRunner.MAX_OUTPUT_BYTES) {
+                    output.write(data);
+                } else {
+                    truncated = true;
+                }
+            } else if (id == SHELL_EXIT) {
+                int exitCode = length > 0 ? data[0] & 0xff : 0;
+                return new ProcessResult(exitCode, toLines(output.toString(StandardCharsets.UTF_8)), truncated);
+            }
+        }
+    }
+
+    /**
+     * 旧协议 shell:，读到连接关闭为止。协议本身不带退出码，命令后追加 echo 输出 $?（与 adb 客户端旧路径做法相同），
+     * 从输出末尾解析后去掉该行；取不到时退出码为 -1（未知，按失败处理）。输出与 v2 一样受上限约束。
+     */
+    private ProcessResult legacyShell(String udid, String command, Duration timeout)
+        throws IOException, InterruptedException {
+        try (AdbConnection connection = open(timeout)) {
+            connection.request("host:transport:" + udid);
+            connection.request("shell:" + command + "; echo " + EXIT_MARKER + "$?");
+            return readLegacyShell(connection, timeout);
+        } catch (AdbFailException ex) {
+            return failure(ex);
+        }
+    }
+
+    private ProcessResult readLegacyShell(AdbConnection connection, Duration timeout) throws IOException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // 最近读到的若干字节，截断后仍能从中取得退出码
+        byte[] tail = new byte[LEGACY_TAIL_BYTES];
+        int tailLength = 0;
+        boolean truncated = false;
+        byte[] chunk = new byte[LEGACY_READ_CHUNK];
+        int read;
+        while ((read = connection.input().read(chunk)) >= 0) {
+            if (System.nanoTime() > deadline) {
+                throw new IOException("adb shell timeout");
+            }
+            if (!truncated && output.size() + read <= ProcessRunner.MAX_OUTPUT_BYTES) {
+                output.write(chunk, 0, read);
+            } else {
+                truncated = true;
+            }
+            int keep = Math.min(read, LEGACY_TAIL_BYTES);
+            int shift = Math.min(tailLength, LEGACY_TAIL_BYTES - keep);
+            System.arraycopy(tail, tailLength - shift, tail, 0, shift);
+            System.arraycopy(chunk, read - keep, tail, shift, keep);
+            tailLength = shift + keep;
+        }
+        String text = output.toString(StandardCharsets.UTF_8);
+        int exitCode = -1;
+        String tailText = new String(tail, 0, tailLength, StandardCharsets.UTF_8);
+        int markerAt = tailText.lastIndexOf(EXIT_MARKER);
+        if (markerAt >= 0) {
+            try {
+                exitCode = Integer.parseInt(tailText.substring(markerAt + EXIT_MARKER.length()).trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        int outputMarkerAt = text.lastIndexOf(EXIT_MARKER);
+        if (outputMarkerAt >= 0) {
+            text = text.substring(0, outputMarkerAt);
+        }
+        return new ProcessResult(exitCode, toLines(text), truncated);
+    }
+
+    private static ProcessResult failure(AdbFailException ex) {
+        return new ProcessResult(1, List.of(ex.getMessage()));
+    }
+
+    private static List<String> toLines(String text) {
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            lines.add(line);
+        }
+        if (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+}
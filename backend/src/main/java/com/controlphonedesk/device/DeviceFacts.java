@@ -0,0 +1,24 @@
+package com.controlphonedesk.device;
+
+import java.util.Map;
+
+/**
+ * 设备连接期间基本不变的 getprop 信息（型号、系统版本、ABI）。
+ */
+public record DeviceFacts(
+    String manufacturer,
+    String model,
+    String androidRelease,
+    String androidSdk,
+    String abi
+) {
+    static DeviceFacts fromProps(Map<String, String> props, String fallbackModel) {
+        return new DeviceFacts(
+            props.getOrDefault("ro.product.manufacturer", ""),
+            props.getOrDefault("ro.product.model", fallbackModel),
+            props.getOrDefault("ro.build.version.release", ""),
+            props.getOrDefault("ro.build.version.sdk", ""),
+            props.getOrDefault("ro.product.cpu.abi", "")
+        );
+    }
+}
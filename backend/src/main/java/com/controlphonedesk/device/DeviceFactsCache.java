@@ -0,0 +1,185 @@
+package com.controlphonedesk.device;
+
+import com.controlphonedesk.AppProperties;
+import com.controlphonedesk.adb.AdbDevice;
+import com.controlphonedesk.adb.AdbDeviceListener;
+import com.controlphonedesk.adb.AdbDeviceTracker;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Component;
+
+/**
+ * 按 udid 缓存设备信息：getprop 静态属性与网络接口分别设置 TTL。
+ * 设备断开、重新接入或状态变化时由 {@link AdbDeviceTracker} 事件驱动失效。
+ * 未命中时同一设备同一时刻只有一个调用方执行加载，并发未命中的调用方加入同一个 future 等待结果。
+ */
+@Component
+public class DeviceFactsCache implements AdbDeviceListener {
+    private final AdbDeviceTracker deviceTracker;
+    private final long staticTtlNanos;
+    private final long volatileTtlNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<DeviceFacts>> factsLoads = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<List<NetInterfaceInfo>>> interfaceLoads = new ConcurrentHashMap<>();
+    private final AtomicLong staticHits = new AtomicLong();
+    private final AtomicLong staticMisses = new AtomicLong();
+    private final AtomicLong volatileHits = new AtomicLong();
+    private final AtomicLong volatileMisses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong joinedLoads = new AtomicLong();
+
+    public DeviceFactsCache(AdbDeviceTracker deviceTracker, AppProperties properties) {
+        this.deviceTracker = deviceTracker;
+        AppProperties.Device device = properties.getDevice();
+        this.staticTtlNanos = TimeUnit.SECONDS.toNanos(device.getStaticTtlSeconds());
+        this.volatileTtlNanos = TimeUnit.SECONDS.toNanos(device.getVolatileTtlSeconds());
+    }
+
+    @PostConstruct
+    public void register() {
+        deviceTracker.addListener(this);
+    }
+
+    /**
+     * 读取静态属性，缓存过期或不存在时调用 loader 加载。
+     */
+    public DeviceFacts getFacts(String udid, Loader<DeviceFacts> loader) throws IOException, InterruptedException {
+        Entry entry = entries.computeIfAbsent(udid, key -> new Entry());
+        Cached<DeviceFacts> cached = entry.facts;
+        if (cached != null && !cached.expired(staticTtlNanos)) {
+            staticHits.incrementAndGet();
+            return cached.value();
+        }
+        staticMisses.incrementAndGet();
+        return load(factsLoads, udid, () -> {
+            DeviceFacts facts = loader.load();
+            entry.facts = new Cached<>(facts, System.nanoTime());
+            return facts;
+        });
+    }
+
+    /**
+     * 读取网络接口（IP 随网络变化，TTL 较短）。
+     */
+    public List<NetInterfaceInfo> getInterfaces(String udid, Loader<List<NetInterfaceInfo>> loader)
+        throws IOException, InterruptedException {
+        Entry entry = entries.computeIfAbsent(udid, key -> new Entry());
+        Cached<List<NetInterfaceInfo>> cached = entry.interfaces;
+        if (cached != null && !cached.expired(volatileTtlNanos)) {
+            volatileHits.incrementAndGet();
+            return cached.value();
+        }
+        volatileMisses.incrementAndGet();
+        return load(interfaceLoads, udid, () -> {
+            List<NetInterfaceInfo> interfaces = List.copyOf(loader.load());
+            entry.interfaces = new Cached<>(interfaces, System.nanoTime());
+            return interfaces;
+        });
+    }
+
+    /**
+     * 已过期的静态属性（采集超时时作为 stale 数据返回），没有则为 null。
+     */
+    public DeviceFacts peekFacts(String udid) {
+        Entry entry = entries.get(udid);
+        return entry == null || entry.facts == null ? null : entry.facts.value();
+    }
+
+    public List<NetInterfaceInfo> peekInterfaces(String udid) {
+        Entry entry = entries.get(udid);
+        return entry == null || entry.interfaces == null ? null : entry.interfaces.value();
+    }
+
+    public void invalidate(String udid) {
+        if (entries.remove(udid) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public DeviceFactsCacheStats stats() {
+        return new DeviceFactsCacheStats(
+            entries.size(),
+            staticHits.get(),
+            staticMisses.get(),
+            volatileHits.get(),
+            volatileMisses.get(),
+            invalidations.get(),
+            joinedLoads.get()
+        );
+    }
+
+    @Override
+    public void onDeviceAttached(AdbDevice device) {
+        // 重新接入的设备可能已刷机或更换，丢弃旧数据
+        invalidate(device.getUdid());
+    }
+
+    @Override
+    public void onDeviceDetached(AdbDevice device) {
+        invalidate(device.getUdid());
+    }
+
+    @Override
+    public void onDeviceStateChanged(AdbDevice previous, AdbDevice current) {
+        invalidate(current.getUdid());
+    }
+
+    /**
+     * 单飞加载：先登记 future 的调用方执行 loader（写入缓存后完成 future），
+     * 其余调用方等待同一结果。future 在加载结束后移除，失败不会被缓存。
+     */
+    private <T> T load(Map<String, CompletableFuture<T>> inFlight, String udid, Loader<T> loader)
+        throws IOException, InterruptedException {
+        CompletableFuture<T> flight = new CompletableFuture<>();
+        CompletableFuture<T> existing = inFlight.computeIfAbsent(udid, key -> flight);
+        if (existing != flight) {
+            joinedLoads.incrementAndGet();
+            return await(existing);
+        }
+        try {
+            T value = loader.load();
+            flight.complete(value);
+            return value;
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(udid, flight);
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> flight) throws IOException, InterruptedException {
+        try {
+            return flight.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws IOException, InterruptedException;
+    }
+
+    private record Cached<T>(T value, long loadedAt) {
+        boolean expired(long ttlNanos) {
+            return System.nanoTime() - loadedAt > ttlNanos;
+        }
+    }
+
+    private static class Entry {
+        private volatile Cached<DeviceFacts> facts;
+        private volatile Cached<List<NetInterfaceInfo>> interfaces;
+    }
+}
@@ -0,0 +1,15 @@
+package com.controlphonedesk.device;
+
+/**
+ * 设备信息缓存的命中统计快照；joinedLoads 为未命中时加入他人进行中加载（未重复执行 adb）的次数。
+ */
+public record DeviceFactsCacheStats(
+    int entries,
+    long staticHits,
+    long staticMisses,
+    long volatileHits,
+    long volatileMisses,
+    long invalidations,
+    long joinedLoads
+) {
+}
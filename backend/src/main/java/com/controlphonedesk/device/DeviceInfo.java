@@ -12,6 +12,9 @@ public class DeviceInfo {
     private String androidSdk;
     private String abi;
     private List<NetInterfaceInfo> interfaces = new ArrayList<>();
+    // 属性采集超时或失败：只包含 adb 基础信息或缓存中的旧数据，staleReason 为 timeout / error
+    private boolean stale;
+    private String staleReason;
 
     public String getUdid() {
         return udid;
@@ -76,4 +79,20 @@ public class DeviceInfo {
     public void setInterfaces(List<NetInterfaceInfo> interfaces) {
         this.interfaces = interfaces;
     }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    public void setStale(boolean stale) {
+        this.stale = stale;
+    }
+
+    public String getStaleReason() {
+        return staleReason;
+    }
+
+    public void setStaleReason(String staleReason) {
+        this.staleReason = staleReason;
+    }
 }
@@ -1,47 +1,179 @@
 package com.controlphonedesk.device;
 
+import com.controlphonedesk.AppProperties;
 import com.controlphonedesk.adb.AdbDevice;
+import com.controlphonedesk.adb.AdbDeviceTracker;
 import com.controlphonedesk.adb.AdbService;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 @Service
 public class DeviceService {
+    private static final Logger log = LoggerFactory.getLogger(DeviceService.class);
+    private static final String STALE_TIMEOUT = "timeout";
+    private static final String STALE_ERROR = "error";
+
     private final AdbService adbService;
+    private final AdbDeviceTracker deviceTracker;
+    private final DeviceFactsCache factsCache;
+    private final Semaphore collectPermits;
+    private final Duration infoTimeout;
+    private final ExecutorService collector = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("device-info-", 0).factory());
 
-    public DeviceService(AdbService adbService) {
+    public DeviceService(
+        AdbService adbService,
+        AdbDeviceTracker deviceTracker,
+        DeviceFactsCache factsCache,
+        AppProperties properties
+    ) {
         this.adbService = adbService;
+        this.deviceTracker = deviceTracker;
+        this.factsCache = factsCache;
+        AppProperties.Device device = properties.getDevice();
+        this.collectPermits = new Semaphore(Math.max(1, device.getInfoConcurrency()));
+        this.infoTimeout = Duration.ofMillis(Math.max(1, device.getInfoTimeoutMs()));
     }
 
     /**
-     * 聚合 adb 信息 + getprop + 网络接口为前端展示结构。
+     * 聚合 adb 信息 + getprop + 网络接口为前端展示结构（经 {@link DeviceFactsCache} 缓存）。
+     * 各设备在虚拟线程上并发采集（全局限流），单台设备超时或失败只标记 stale，不影响整个列表。
      */
     public List<DeviceInfo> listDevices() {
-        List<DeviceInfo> devices = new ArrayList<>();
+        List<AdbDevice> adbDevices;
         try {
-            List<AdbDevice> adbDevices = adbService.listDevices();
-            for (AdbDevice adbDevice : adbDevices) {
-                DeviceInfo info = new DeviceInfo();
-                info.setUdid(adbDevice.getUdid());
-                info.setState(adbDevice.getState());
-                info.setModel(adbDevice.getFields().getOrDefault("model", ""));
-
-                if ("device".equals(adbDevice.getState())) {
-                    Map<String, String> props = adbService.getProps(adbDevice.getUdid());
-                    info.setManufacturer(props.getOrDefault("ro.product.manufacturer", ""));
-                    info.setModel(props.getOrDefault("ro.product.model", info.getModel()));
-                    info.setAndroidRelease(props.getOrDefault("ro.build.version.release", ""));
-                    info.setAndroidSdk(props.getOrDefault("ro.build.version.sdk", ""));
-                    info.setAbi(props.getOrDefault("ro.product.cpu.abi", ""));
-                    info.setInterfaces(adbService.getInterfaces(adbDevice.getUdid()));
-                }
-                devices.add(info);
-            }
+            adbDevices = deviceTracker.getDevices();
         } catch (Exception error) {
             throw new RuntimeException("Failed to list devices: " + error.getMessage(), error);
         }
+        List<DeviceInfo> devices = new ArrayList<>(adbDevices.size());
+        List<Future<?>> pending = new ArrayList<>();
+        for (AdbDevice adbDevice : adbDevices) {
+            DeviceInfo info = new DeviceInfo();
+            info.setUdid(adbDevice.getUdid());
+            info.setState(adbDevice.getState());
+            info.setModel(adbDevice.getFields().getOrDefault("model", ""));
+            devices.add(info);
+            if ("device".equals(adbDevice.getState())) {
+                pending.add(collector.submit(() -> collect(info)));
+            }
+        }
+        try {
+            for (Future<?> future : pending) {
+                // 截止时间由采集任务自身保证，这里只等待结果
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            pending.forEach(future -> future.cancel(true));
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Failed to list devices: " + ex.getCause().getMessage(), ex.getCause());
+        }
         return devices;
     }
+
+    /**
+     * 采集单台设备信息：先取得并发许可，再在截止时间内依次读取属性和网络接口。
+     * 截止时间从拿到许可时开始计算，排队时间不计入。
+     */
+    private void collect(DeviceInfo info) {
+        String udid = info.getUdid();
+        try {
+            collectPermits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            markStale(info, STALE_ERROR);
+            return;
+        }
+        try {
+            Future<?> task = collector.submit(() -> {
+                fill(info);
+                return null;
+            });
+            try {
+                task.get(infoTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                // 中断采集线程：阻塞中的 adb socket 随之关闭，连接许可立即归还
+                task.cancel(true);
+                log.warn("Device info collection timed out: udid={} timeout={}ms", udid, infoTimeout.toMillis());
+                markStale(info, STALE_TIMEOUT);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                log.warn("Device info collection failed: udid={} error={}", udid, cause.getMessage());
+                markStale(info, isTimeout(cause) ? STALE_TIMEOUT : STALE_ERROR);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                task.cancel(true);
+                markStale(info, STALE_ERROR);
+            }
+        } finally {
+            collectPermits.release();
+        }
+    }
+
+    private void fill(DeviceInfo info) throws IOException, InterruptedException {
+        String udid = info.getUdid();
+        long deadline = System.nanoTime() + infoTimeout.toNanos();
+        DeviceFacts facts = factsCache.getFacts(udid,
+            () -> DeviceFacts.fromProps(adbService.getProps(udid, remaining(deadline)), info.getModel()));
+        List<NetInterfaceInfo> interfaces = factsCache.getInterfaces(udid,
+            () -> adbService.getInterfaces(udid, remaining(deadline)));
+        // 全部成功后再写入，超时被取消的任务不会留下半份数据
+        synchronized (info) {
+            if (info.isStale()) {
+                return;
+            }
+            apply(info, facts, interfaces);
+        }
+    }
+
+    private static void apply(DeviceInfo info, DeviceFacts facts, List<NetInterfaceInfo> interfaces) {
+        if (facts != null) {
+            info.setManufacturer(facts.manufacturer());
+            info.setModel(facts.model());
+            info.setAndroidRelease(facts.androidRelease());
+            info.setAndroidSdk(facts.androidSdk());
+            info.setAbi(facts.abi());
+        }
+        if (interfaces != null) {
+            info.setInterfaces(interfaces);
+        }
+    }
+
+    /**
+     * 标记 stale，并用缓存中已过期的数据（若有）填充，避免前端显示空白。
+     */
+    private void markStale(DeviceInfo info, String reason) {
+        synchronized (info) {
+            info.setStale(true);
+            info.setStaleReason(reason);
+            apply(info, factsCache.peekFacts(info.getUdid()), factsCache.peekInterfaces(info.getUdid()));
+        }
+    }
+
+    private static Duration remaining(long deadline) {
+        return Duration.ofNanos(Math.max(TimeUnit.MILLISECONDS.toNanos(1), deadline - System.nanoTime()));
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        if (error instanceof SocketTimeoutException) {
+            return true;
+        }
+        String message = error.getMessage();
+        return message != null && message.toLowerCase().contains("timeout");
+    }
 }
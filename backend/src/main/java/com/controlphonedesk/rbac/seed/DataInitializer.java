@@ -69,6 +69,7 @@ public class DataInitializer implements CommandLineRunner {
             roleRepository.save(adminRole);
         }
 
+        // 普通用户只能查看与连接设备；录制等占用服务器资源的权限只随全部权限授予管理员
         Set<Permission> userPermissions = permissionRepository.findAll().stream()
             .filter(permission -> Set.of(
                 DefaultPermissions.GROUP_LIST,
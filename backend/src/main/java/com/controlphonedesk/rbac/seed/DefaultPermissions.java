@@ -34,6 +34,9 @@ public final class DefaultPermissions {
     public static final String DEVICE_UNBIND = "device:unbind";
     public static final String DEVICE_CONNECT = "device:connect";
 
+    public static final String STREAM_STATS = "stream:stats";
+    public static final String RECORDING_MANAGE = "recording:manage";
+
     public static List<PermissionSeed> seeds() {
         return List.of(
             new PermissionSeed(USER_LIST, "用户-查看", "查看用户列表"),
@@ -62,7 +65,9 @@ public final class DefaultPermissions {
             new PermissionSeed(DEVICE_UPDATE, "设备-修改", "修改设备别名/备注"),
             new PermissionSeed(DEVICE_BIND, "设备-绑定", "绑定设备到分组"),
             new PermissionSeed(DEVICE_UNBIND, "设备-解绑", "从分组解绑设备"),
-            new PermissionSeed(DEVICE_CONNECT, "设备-连接", "连接设备")
+            new PermissionSeed(DEVICE_CONNECT, "设备-连接", "连接设备"),
+            new PermissionSeed(STREAM_STATS, "视频流-监控", "查看视频流转发统计"),
+            new PermissionSeed(RECORDING_MANAGE, "录制-管理", "开始或停止设备录制（占用服务器磁盘）")
         );
     }
 
@@ -0,0 +1,144 @@
+package com.controlphonedesk.recording;
+
+import com.controlphonedesk.AppProperties;
+import com.controlphonedesk.stream.DeviceStreamHub;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * 设备录制管理：每台设备同时最多一个录制，录制作为旁路消费者挂在设备共享流上（必要时建立上行），
+ * 不影响观看者。上行断开时录制自行结束。
+ * <p>
+ * 录制目录整体有容量上限（不做自动清理）：开始录制时重新统计目录占用，已达上限则拒绝；
+ * 录制中各录制共享同一计数，达到上限或单次时长上限时自行结束。
+ */
+@Service
+public class RecordingService {
+    private static final Logger log = LoggerFactory.getLogger(RecordingService.class);
+    private static final DateTimeFormatter DIR_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final long MB = 1024L * 1024L;
+
+    private final DeviceStreamHub streamHub;
+    private final AppProperties.Recording config;
+    private final Map<String, SegmentRecorder> recorders = new ConcurrentHashMap<>();
+    // 录制目录已占用的字节数，开始录制时按磁盘重新统计，录制中由各写线程累加
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    public RecordingService(DeviceStreamHub streamHub, AppProperties properties) {
+        this.streamHub = streamHub;
+        this.config = properties.getRecording();
+    }
+
+    /**
+     * 开始录制；设备已在录制时返回当前录制的状态，录制目录已达容量上限时返回 null。
+     */
+    public RecordingStats start(String udid) throws IOException {
+        synchronized (recorders) {
+            SegmentRecorder existing = recorders.get(udid);
+            if (existing != null) {
+                return existing.stats();
+            }
+            long maxTotalBytes = config.getMaxTotalMb() * MB;
+            usedBytes.set(diskUsage(Paths.get(config.getDir())));
+            if (usedBytes.get() >= maxTotalBytes) {
+                log.warn("Recording rejected, storage limit reached: udid={} usedBytes={} maxTotalBytes={}",
+                    udid, usedBytes.get(), maxTotalBytes);
+                return null;
+            }
+            Path directory = Paths.get(config.getDir(), safeName(udid), LocalDateTime.now().format(DIR_FORMAT));
+            SegmentRecorder recorder = new SegmentRecorder(
+                udid,
+                directory,
+                config.getSegmentSeconds(),
+                config.getSegmentMaxMb() * MB,
+                config.getMaxBufferedMb() * MB,
+                config.getMaxDurationMinutes() * 60L,
+                usedBytes,
+                maxTotalBytes,
+                this::finished
+            );
+            recorder.start();
+            recorders.put(udid, recorder);
+            streamHub.attachTap(udid, recorder).whenComplete((stream, error) -> {
+                if (error != null) {
+                    log.warn("Recording attach failed: udid={} error={}", udid, error.getMessage());
+                    recorder.stop();
+                } else if (recorder.isStopping()) {
+                    // 建立上行期间录制已停止
+                    streamHub.detachTap(udid, recorder);
+                }
+            });
+            log.info("Recording started: udid={} dir={}", udid, directory);
+            return recorder.stats();
+        }
+    }
+
+    /**
+     * 停止录制，已排队的帧由写线程写完后关闭文件；未在录制时返回 null。
+     */
+    public RecordingStats stop(String udid) {
+        SegmentRecorder recorder = recorders.remove(udid);
+        if (recorder == null) {
+            return null;
+        }
+        // 先标记停止再摘除，与仍在建立中的挂接回调配合，不会遗留挂在流上的录制
+        recorder.stop();
+        streamHub.detachTap(udid, recorder);
+        return recorder.stats();
+    }
+
+    public List<RecordingStats> stats() {
+        return recorders.values().stream().map(SegmentRecorder::stats).toList();
+    }
+
+    @PreDestroy
+    public void stopAll() {
+        recorders.keySet().forEach(this::stop);
+    }
+
+    private void finished(SegmentRecorder recorder) {
+        if (recorders.remove(recorder.getUdid(), recorder)) {
+            // 写盘失败或上行断开时录制自行结束，同样要从设备流摘除
+            streamHub.detachTap(recorder.getUdid(), recorder);
+        }
+    }
+
+    private static long diskUsage(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException ex) {
+                    // 统计期间文件被删除等情况，按 0 计
+                    return 0;
+                }
+            }).sum();
+        } catch (NoSuchFileException ex) {
+            return 0;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * udid 可能含有冒号等字符（网络设备 ip:port），只保留字母、数字、下划线与连字符作为目录名。
+     */
+    private static String safeName(String udid) {
+        return udid.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+}
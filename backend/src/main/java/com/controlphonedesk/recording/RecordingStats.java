@@ -0,0 +1,21 @@
+package com.controlphonedesk.recording;
+
+/**
+ * 录制状态：写盘字节、关键帧数与分段数，以及因写盘跟不上而丢弃的帧数/字节数。
+ * capped 表示录制因达到时长或总量上限而自行结束。
+ */
+public record RecordingStats(
+    String udid,
+    String directory,
+    long startedAt,
+    boolean active,
+    boolean failed,
+    boolean capped,
+    int segments,
+    long keyFrames,
+    long writtenBytes,
+    long queuedBytes,
+    long droppedFrames,
+    long droppedBytes
+) {
+}
@@ -0,0 +1,363 @@
+package com.controlphonedesk.recording;
+
+import com.controlphonedesk.stream.FrameKind;
+import com.controlphonedesk.stream.StreamFrame;
+import com.controlphonedesk.stream.StreamTap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 单次录制：作为设备流的旁路消费者，把原始 H.264（Annex B）写入滚动分段文件 segment-NNNNN.h264。
+ * 每个分段从关键帧开始，每个关键帧前都写入当前参数集，因此索引中的任一偏移都可以独立解码。
+ * <p>
+ * 帧先进入按字节计量的有界队列（只持有共享帧的引用，不拷贝），由独立写线程通过 FileChannel 追加写盘；
+ * 队列满时丢弃新帧并累计丢弃字节，随后丢弃非关键帧直到下一个 IDR，从不阻塞上行读取和观看者。
+ * 录制时长达到上限（在关键帧处截止）或全部录制的磁盘占用达到总量上限时自行结束。
+ * <p>
+ * index.bin 记录每个关键帧的位置，每条 20 字节（大端）：[分段序号 u32][分段内偏移 u64][时间 epoch 毫秒 u64]。
+ */
+public class SegmentRecorder implements StreamTap {
+    private static final Logger log = LoggerFactory.getLogger(SegmentRecorder.class);
+    private static final int INDEX_ENTRY_BYTES = 20;
+
+    private final String udid;
+    private final Path directory;
+    private final long segmentNanos;
+    private final long segmentMaxBytes;
+    private final long maxBufferedBytes;
+    private final long maxDurationNanos;
+    private final AtomicLong totalBytes;
+    private final long maxTotalBytes;
+    private final Consumer<SegmentRecorder> onFinished;
+    private final long startedAt = System.currentTimeMillis();
+    // nanoTime 到 epoch 的换算偏移，用于把帧到达时间写入索引
+    private final long epochOffsetNanos = TimeUnit.MILLISECONDS.toNanos(startedAt) - System.nanoTime();
+
+    private final ArrayDeque<StreamFrame> queue = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private long queuedBytes;
+    private boolean started;
+    private boolean awaitingKeyFrame;
+    private boolean stopping;
+    private volatile boolean finished;
+    private volatile boolean failed;
+    private volatile boolean capped;
+
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLong keyFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+    private volatile int segments;
+
+    // 以下只在写线程上访问
+    private FileChannel segment;
+    private FileChannel index;
+    private long segmentBytes;
+    private long segmentStartedAt;
+    private long firstKeyAt = -1;
+    private ByteBuffer config;
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+
+    SegmentRecorder(
+        String udid,
+        Path directory,
+        long segmentSeconds,
+        long segmentMaxBytes,
+        long maxBufferedBytes,
+        long maxDurationSeconds,
+        AtomicLong totalBytes,
+        long maxTotalBytes,
+        Consumer<SegmentRecorder> onFinished
+    ) {
+        this.udid = udid;
+        this.directory = directory;
+        this.segmentNanos = TimeUnit.SECONDS.toNanos(Math.max(1, segmentSeconds));
+        this.segmentMaxBytes = Math.max(1, segmentMaxBytes);
+        this.maxBufferedBytes = Math.max(1, maxBufferedBytes);
+        this.maxDurationNanos = TimeUnit.SECONDS.toNanos(Math.max(1, maxDurationSeconds));
+        this.totalBytes = totalBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.onFinished = onFinished;
+    }
+
+    /**
+     * 创建录制目录与索引文件并启动写线程。
+     */
+    void start() throws IOException {
+        Files.createDirectories(directory);
+        index = FileChannel.open(directory.resolve("index.bin"),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        Thread.ofVirtual().name("recorder-" + udid).start(this::writeLoop);
+    }
+
+    /**
+     * 只收参数集与画面帧。参数集体积很小且后续分段依赖它，总是入队；画面帧超出内存上限时丢弃。
+     */
+    @Override
+    public void onFrame(StreamFrame frame) {
+        FrameKind kind = frame.kind();
+        if (kind != FrameKind.CONFIG && !kind.isVideo()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (stopping) {
+                return;
+            }
+            if (kind == FrameKind.DELTA && !started) {
+                // 录制从第一个关键帧开始
+                return;
+            }
+            if (kind == FrameKind.DELTA && awaitingKeyFrame) {
+                drop(frame);
+                return;
+            }
+            if (kind != FrameKind.CONFIG && queuedBytes + frame.size() > maxBufferedBytes) {
+                awaitingKeyFrame = true;
+                drop(frame);
+                return;
+            }
+            if (kind == FrameKind.KEY) {
+                started = true;
+                awaitingKeyFrame = false;
+            }
+            queue.addLast(frame.retain());
+            queuedBytes += frame.size();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onUpstreamClosed() {
+        log.info("Recording stopped by upstream close: udid={} dir={}", udid, directory);
+        stop();
+    }
+
+    /**
+     * 停止接收新帧；写线程写完已排队的帧后关闭文件。
+     */
+    void stop() {
+        lock.lock();
+        try {
+            stopping = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    String getUdid() {
+        return udid;
+    }
+
+    boolean isStopping() {
+        lock.lock();
+        try {
+            return stopping;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    RecordingStats stats() {
+        long queued;
+        lock.lock();
+        try {
+            queued = queuedBytes;
+        } finally {
+            lock.unlock();
+        }
+        return new RecordingStats(
+            udid,
+            directory.toString(),
+            startedAt,
+            !finished,
+            failed,
+            capped,
+            segments,
+            keyFrames.get(),
+            writtenBytes.get(),
+            queued,
+            droppedFrames.get(),
+            droppedBytes.get()
+        );
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                StreamFrame frame;
+                lock.lock();
+                try {
+                    while (queue.isEmpty() && !stopping) {
+                        notEmpty.await();
+                    }
+                    frame = queue.pollFirst();
+                    if (frame == null) {
+                        return;
+                    }
+                    queuedBytes -= frame.size();
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    if (reachedLimit(frame)) {
+                        capped = true;
+                        return;
+                    }
+                    write(frame);
+                } finally {
+                    frame.release();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            failed = true;
+            log.warn("Recording write failed: udid={} dir={} error={}", udid, directory, ex.getMessage());
+        } finally {
+            finish();
+        }
+    }
+
+    /**
+     * 时长只在关键帧处判断，使最后一个分段以完整的 GOP 结束；总量按即将写入的字节预判，不超出上限。
+     */
+    private boolean reachedLimit(StreamFrame frame) {
+        if (frame.kind() == FrameKind.KEY) {
+            if (firstKeyAt < 0) {
+                firstKeyAt = frame.receivedAt();
+            } else if (frame.receivedAt() - firstKeyAt >= maxDurationNanos) {
+                log.info("Recording reached max duration: udid={} dir={}", udid, directory);
+                return true;
+            }
+        }
+        if (frame.kind() != FrameKind.CONFIG && totalBytes.get() + frame.size() > maxTotalBytes) {
+            log.warn("Recording reached total size limit: udid={} dir={} totalBytes={}",
+                udid, directory, totalBytes.get());
+            return true;
+        }
+        return false;
+    }
+
+    private void write(StreamFrame frame) throws IOException {
+        switch (frame.kind()) {
+            case CONFIG -> {
+                // 保存一份参数集，写在之后每个关键帧之前
+                ByteBuffer payload = frame.payload();
+                config = ByteBuffer.allocate(payload.remaining()).put(payload).flip();
+            }
+            case KEY -> {
+                if (segment == null || frame.receivedAt() - segmentStartedAt >= segmentNanos
+                    || segmentBytes >= segmentMaxBytes) {
+                    rollSegment(frame.receivedAt());
+                }
+                writeIndex(frame.receivedAt());
+                if (config != null) {
+                    append(config.duplicate());
+                }
+                append(frame.payload());
+                keyFrames.incrementAndGet();
+            }
+            default -> {
+                if (segment != null) {
+                    append(frame.payload());
+                }
+            }
+        }
+    }
+
+    private void rollSegment(long receivedAt) throws IOException {
+        closeSegment();
+        int number = segments + 1;
+        segment = FileChannel.open(directory.resolve(String.format("segment-%05d.h264", number)),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segments = number;
+        segmentBytes = 0;
+        segmentStartedAt = receivedAt;
+    }
+
+    private void writeIndex(long receivedAt) throws IOException {
+        indexEntry.clear();
+        indexEntry.putInt(segments);
+        indexEntry.putLong(segmentBytes);
+        indexEntry.putLong(TimeUnit.NANOSECONDS.toMillis(epochOffsetNanos + receivedAt));
+        indexEntry.flip();
+        writeFully(index, indexEntry);
+    }
+
+    private void append(ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        writeFully(segment, data);
+        segmentBytes += length;
+        writtenBytes.addAndGet(length);
+        totalBytes.addAndGet(length);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.force(false);
+            segment.close();
+            segment = null;
+        }
+    }
+
+    /**
+     * 写线程退出：释放未写出的帧，关闭文件并通知录制服务。
+     */
+    private void finish() {
+        lock.lock();
+        try {
+            stopping = true;
+            StreamFrame frame;
+            while ((frame = queue.pollFirst()) != null) {
+                frame.release();
+            }
+            queuedBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            closeSegment();
+        } catch (IOException ex) {
+            failed = true;
+            log.warn("Recording close failed: udid={} dir={} error={}", udid, directory, ex.getMessage());
+        }
+        try {
+            index.force(false);
+            index.close();
+        } catch (IOException ex) {
+            failed = true;
+        }
+        finished = true;
+        log.info("Recording finished: udid={} dir={} segments={} bytes={} droppedBytes={}",
+            udid, directory, segments, writtenBytes.get(), droppedBytes.get());
+        onFinished.accept(this);
+    }
+
+    private void drop(StreamFrame frame) {
+        droppedFrames.incrementAndGet();
+        droppedBytes.addAndGet(frame.size());
+    }
+}
@@ -0,0 +1,114 @@
+package com.controlphonedesk.scrcpy;
+
+import com.controlphonedesk.AppProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * 定期停止空闲的 scrcpy server：最后一个观看者离开超过 idleTtl 后回收，
+ * 按 LRU（最近使用）或 LFU（使用次数）保留 keepWarm 台设备不回收。
+ * 开启预热池时所有在线设备都由预热池保持运行，不做空闲回收（否则预热的 server 到期即被停止且不会重新预热）。
+ */
+@Component
+public class ScrcpyIdleReaper {
+    private static final Logger log = LoggerFactory.getLogger(ScrcpyIdleReaper.class);
+    private static final Duration MAX_SWEEP_INTERVAL = Duration.ofSeconds(30);
+
+    private final ScrcpyService scrcpyService;
+    private final Duration idleTtl;
+    private final int keepWarm;
+    private final boolean warmPool;
+    private final Comparator<ServerStatus> keepWarmOrder;
+    private volatile boolean running;
+    private Thread worker;
+
+    public ScrcpyIdleReaper(ScrcpyService scrcpyService, AppProperties properties) {
+        this.scrcpyService = scrcpyService;
+        AppProperties.Scrcpy scrcpy = properties.getScrcpy();
+        this.idleTtl = Duration.ofSeconds(Math.max(0, scrcpy.getIdleTtlSeconds()));
+        this.keepWarm = Math.max(0, scrcpy.getKeepWarm());
+        this.warmPool = scrcpy.isWarmPool();
+        this.keepWarmOrder = "lfu".equalsIgnoreCase(scrcpy.getKeepWarmPolicy())
+            ? Comparator.comparingLong(ServerStatus::useCount).reversed()
+                .thenComparing(Comparator.comparingLong(ServerStatus::lastUsedEpochMs).reversed())
+            : Comparator.comparingLong(ServerStatus::lastUsedEpochMs).reversed();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (idleTtl.isZero()) {
+            return;
+        }
+        if (warmPool) {
+            log.info("Warm pool enabled, idle scrcpy server reaping disabled");
+            return;
+        }
+        running = true;
+        worker = Thread.ofVirtual().name("scrcpy-idle-reaper").start(this::reapLoop);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    private void reapLoop() {
+        Duration interval = idleTtl.dividedBy(2);
+        if (interval.compareTo(MAX_SWEEP_INTERVAL) > 0) {
+            interval = MAX_SWEEP_INTERVAL;
+        }
+        while (running) {
+            try {
+                Thread.sleep(Math.max(1000, interval.toMillis()));
+                sweep();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                log.warn("Idle server sweep failed: {}", ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 一轮回收：保温集合之外、空闲超时的运行中 server 逐个停止（是否满足条件由生命周期在锁内复核）。
+     */
+    void sweep() throws InterruptedException {
+        List<ServerStatus> statuses = scrcpyService.serverStatuses();
+        Set<String> keep = statuses.stream()
+            .filter(status -> status.useCount() > 0)
+            .sorted(keepWarmOrder)
+            .limit(keepWarm)
+            .map(ServerStatus::udid)
+            .collect(Collectors.toSet());
+        long now = System.currentTimeMillis();
+        for (ServerStatus status : statuses) {
+            if (status.state() != ServerState.RUNNING || status.inUse() || keep.contains(status.udid())) {
+                continue;
+            }
+            if (now - status.idleSinceEpochMs() < idleTtl.toMillis()) {
+                continue;
+            }
+            try {
+                if (scrcpyService.evictIfIdle(status.udid(), idleTtl)) {
+                    log.info("Idle scrcpy server stopped: udid={} idle={}s", status.udid(),
+                        (now - status.idleSinceEpochMs()) / 1000);
+                }
+            } catch (IOException ex) {
+                log.warn("Failed to stop idle scrcpy server: udid={} error={}", status.udid(), ex.getMessage());
+            }
+        }
+    }
+}
@@ -1,34 +1,57 @@
 package com.controlphonedesk.scrcpy;
 
 import com.controlphonedesk.AppProperties;
+import com.controlphonedesk.adb.AdbForwardPool;
+import com.controlphonedesk.adb.AdbPriority;
 import com.controlphonedesk.adb.AdbService;
-import com.controlphonedesk.adb.ProcessRunner;
-import com.controlphonedesk.adb.ProcessResult;
+import jakarta.annotation.PostConstruct;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
 @Service
 public class ScrcpyService {
-    private static final String DEVICE_JAR_PATH = "/data/local/tmp/scrcpy-server.jar";
+    private static final Logger log = LoggerFactory.getLogger(ScrcpyService.class);
     private static final String PID_FILE = "/data/local/tmp/ws_scrcpy.pid";
     private static final Duration START_TIMEOUT = Duration.ofSeconds(5);
 
     private final AppProperties properties;
     private final AdbService adbService;
+    private final AdbForwardPool forwardPool;
+    private volatile ServerJar serverJar;
+    private final Map<String, ServerLifecycle> lifecycles = new ConcurrentHashMap<>();
+    // 预热模式下由本服务持有一次 forward 引用的设备
+    private final Set<String> warmHolds = ConcurrentHashMap.newKeySet();
 
-    public ScrcpyService(AppProperties properties, AdbService adbService) {
+    public ScrcpyService(AppProperties properties, AdbService adbService, AdbForwardPool forwardPool) {
         this.properties = properties;
         this.adbService = adbService;
+        this.forwardPool = forwardPool;
+    }
+
+    /**
+     * 启动时解压并计算 jar 摘要，之后每次启动 server 只需比对设备端文件。
+     */
+    @PostConstruct
+    public void prepareServerJar() {
+        try {
+            serverJar();
+        } catch (IOException ex) {
+            log.warn("Failed to prepare scrcpy server jar: {}", ex.getMessage());
+        }
     }
 
     /**
@@ -41,69 +64,185 @@ public class ScrcpyService {
 
     /**
      * 确保 scrcpy server 在设备端运行（可强制重启）。
+     * 同一设备同一时刻只有一个调用方执行 push/启动，并发调用方加入同一个 future 等待结果。
      */
     public int ensureServerRunning(String udid, boolean forceRestart) throws IOException, InterruptedException {
+        ServerLifecycle lifecycle = lifecycles.computeIfAbsent(udid, ServerLifecycle::new);
+        CompletableFuture<Integer> flight = new CompletableFuture<>();
+        CompletableFuture<Integer> existing = lifecycle.joinOrBegin(flight);
+        if (existing != null) {
+            // 已有调用方在启动（包括强制重启），直接复用其结果，避免互相 kill 或重复 push
+            return await(existing);
+        }
+        try {
+            CompletableFuture<Void> eviction = lifecycle.pendingEviction();
+            if (eviction != null) {
+                // 空闲回收正在停止 server，等其结束后再重新启动
+                eviction.join();
+            }
+            flight.complete(advance(udid, lifecycle, forceRestart));
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            lifecycle.failed(ex);
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            lifecycle.finish();
+        }
+        return flight.join();
+    }
+
+    /**
+     * 各设备 server 的生命周期状态与各阶段耗时。
+     */
+    public List<ServerStatus> serverStatuses() {
+        return lifecycles.values().stream().map(ServerLifecycle::status).toList();
+    }
+
+    /**
+     * 最近一次确认 server 在运行（上行断开等异常后由 {@link #markStopped} 重置）。
+     */
+    public boolean isRunning(String udid) {
+        ServerLifecycle lifecycle = lifecycles.get(udid);
+        return lifecycle != null && lifecycle.state() == ServerState.RUNNING;
+    }
+
+    /**
+     * server 可能已退出（上行异常断开、设备断开），下次使用前重新探测。
+     */
+    public void markStopped(String udid) {
+        ServerLifecycle lifecycle = lifecycles.get(udid);
+        if (lifecycle != null) {
+            lifecycle.transition(ServerState.STOPPED);
+        }
+    }
+
+    /**
+     * 取得到设备 server 的本机转发端口（转发池按设备复用，预热过的设备直接命中）。
+     */
+    public int openForward(String udid) throws IOException, InterruptedException {
+        return forwardPool.acquire(udid, serverRemote());
+    }
+
+    /**
+     * 归还转发端口引用，由转发池延迟删除。
+     */
+    public void closeForward(String udid) {
+        forwardPool.release(udid, serverRemote());
+    }
+
+    /**
+     * 共享流开始使用设备 server（流打开时调用，与 {@link #serverReleased} 成对计数）。
+     */
+    public void serverAcquired(String udid) {
+        lifecycles.computeIfAbsent(udid, ServerLifecycle::new).acquired();
+    }
+
+    /**
+     * 共享流拆除，归还一份使用；全部归还后 server 进入空闲。
+     */
+    public void serverReleased(String udid) {
+        ServerLifecycle lifecycle = lifecycles.get(udid);
+        if (lifecycle != null) {
+            lifecycle.released();
+        }
+    }
+
+    /**
+     * 空闲超过 idleTimeout 时停止 server 并清理预热 forward；jar 仍留在设备上，下次启动无需 push。
+     * 返回是否确实回收。
+     */
+    public boolean evictIfIdle(String udid, Duration idleTimeout) throws IOException, InterruptedException {
+        ServerLifecycle lifecycle = lifecycles.get(udid);
+        if (lifecycle == null || lifecycle.beginEviction(idleTimeout.toMillis()) == null) {
+            return false;
+        }
+        try {
+            if (warmHolds.remove(udid)) {
+                closeForward(udid);
+            }
+            killServers(udid);
+            return true;
+        } finally {
+            lifecycle.endEviction();
+        }
+    }
+
+    /**
+     * 预热：启动 server 并预先持有一次 forward 引用（已持有则跳过）。
+     */
+    public void warmUp(String udid) throws IOException, InterruptedException {
+        ensureServerRunning(udid);
+        if (!warmHolds.add(udid)) {
+            return;
+        }
+        try {
+            openForward(udid);
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            warmHolds.remove(udid);
+            throw ex;
+        }
+    }
+
+    /**
+     * 设备断开：server 随之结束；转发池会自行移除该设备的转发。
+     */
+    public void deviceGone(String udid) {
+        markStopped(udid);
+        warmHolds.remove(udid);
+    }
+
+    private String serverRemote() {
+        return "tcp:" + properties.getScrcpy().getServerPort();
+    }
+
+    /**
+     * 由 owner 推进状态机：探测 → PUSHING → STARTING → RUNNING。
+     */
+    private int advance(String udid, ServerLifecycle lifecycle, boolean forceRestart)
+        throws IOException, InterruptedException {
         if (forceRestart) {
             killServers(udid);
+            lifecycle.transition(ServerState.STOPPED);
         }
         Optional<Integer> existing = getServerPid(udid);
         if (existing.isPresent()) {
+            lifecycle.running(existing.get());
             return existing.get();
         }
+        lifecycle.transition(ServerState.PUSHING);
         pushServerJar(udid);
+        lifecycle.transition(ServerState.STARTING);
         startServer(udid);
-        return waitForServer(udid);
+        int pid = waitForServer(udid);
+        lifecycle.running(pid);
+        return pid;
     }
 
-    /**
-     * 通过解析 /proc/<pid>/cmdline 判断 scrcpy server 是否在运行。
-     */
-    public Optional<Integer> getServerPid(String udid) throws IOException, InterruptedException {
-        List<Integer> pids = listAppProcessPids(udid);
-        for (Integer pid : pids) {
-            String cmdline = readCmdline(udid, pid);
-            if (isScrcpyServerCmdline(cmdline)) {
-                return Optional.of(pid);
+    private static int await(CompletableFuture<Integer> flight) throws IOException, InterruptedException {
+        try {
+            return flight.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
             }
+            throw new IOException(cause.getMessage(), cause);
         }
-        return Optional.empty();
     }
 
     /**
-     * 尝试列出 app_process 的 PID（不同 Android 版本命令差异）。
+     * 通过解析 /proc/<pid>/cmdline 判断 scrcpy server 是否在运行（一次 adb 往返）。
      */
-    private List<Integer> listAppProcessPids(String udid) throws IOException, InterruptedException {
-        List<Integer> pids = new ArrayList<>();
-        String output = shell(udid, "pidof app_process");
-        if (!output.isBlank()) {
-            for (String token : output.trim().split("\\s+")) {
-                try {
-                    pids.add(Integer.parseInt(token));
-                } catch (NumberFormatException ignored) {
-                }
-            }
-        }
-        if (!pids.isEmpty()) {
-            return pids;
-        }
-        output = shell(udid, "ps -A | grep app_process");
-        for (String line : output.split("\n")) {
-            String[] parts = line.trim().split("\\s+");
-            if (parts.length >= 2) {
-                try {
-                    pids.add(Integer.parseInt(parts[1]));
-                } catch (NumberFormatException ignored) {
-                }
-            }
-        }
-        return pids;
+    public Optional<Integer> getServerPid(String udid) throws IOException, InterruptedException {
+        return probe(udid).serverPid(this::isScrcpyServerCmdline);
     }
 
     /**
-     * 读取进程 cmdline。
+     * 在设备端执行探测脚本，一次取回所有 app_process 的 cmdline 与 PID 文件。
      */
-    private String readCmdline(String udid, int pid) throws IOException, InterruptedException {
-        return shell(udid, "cat /proc/" + pid + "/cmdline");
+    private ServerProbe probe(String udid) throws IOException, InterruptedException {
+        String output = shell(udid, ServerProbe.script(PID_FILE));
+        return ServerProbe.parse(List.of(output.split("\n")));
     }
 
     /**
@@ -132,48 +271,48 @@ public class ScrcpyService {
      * 杀掉设备端所有 scrcpy server 进程（用于强制重启）。
      */
     private void killServers(String udid) throws IOException, InterruptedException {
-        List<Integer> pids = listAppProcessPids(udid);
+        List<Integer> pids = probe(udid).serverPids(this::isScrcpyServerCmdline);
+        StringBuilder command = new StringBuilder();
         for (Integer pid : pids) {
-            String cmdline = readCmdline(udid, pid);
-            if (isScrcpyServerCmdline(cmdline)) {
-                adbService.shell(udid, "kill " + pid);
-            }
+            command.append("kill ").append(pid).append("; ");
         }
         // 清理旧 PID 文件，避免读到过期 PID
-        adbService.shell(udid, "rm -f " + PID_FILE);
+        command.append("rm -f ").append(PID_FILE);
+        adbService.shell(udid, command.toString(), AdbPriority.INTERACTIVE);
         // 给系统一点时间回收进程
         TimeUnit.MILLISECONDS.sleep(300);
     }
 
     /**
-     * 将 jar 从资源目录解压到临时目录，并 push 到设备。
+     * push jar 到设备：设备端已有同摘要、同大小的文件时跳过（重复启动、重启后文件仍在）。
      */
     private void pushServerJar(String udid) throws IOException, InterruptedException {
-        Path jarPath = extractServerJar();
-        adbService.pushFile(udid, jarPath.toString(), DEVICE_JAR_PATH);
+        ServerJar jar = serverJar();
+        if (jar.matchesDeviceSize(shell(udid, jar.sizeCommand()))) {
+            return;
+        }
+        // 清理旧版本与传输中断留下的残缺文件
+        adbService.shell(udid, "rm -f " + ServerJar.DEVICE_GLOB, AdbPriority.INTERACTIVE);
+        adbService.pushFile(udid, jar.localPath().toString(), jar.devicePath());
     }
 
     /**
-     * 从 classpath 提取 scrcpy server jar 到本机临时目录（避免重复拷贝）。
+     * 从 classpath 提取 scrcpy server jar 到本机临时目录并计算摘要（只做一次）。
      */
-    private Path extractServerJar() throws IOException {
-        Path targetDir = Paths.get(System.getProperty("java.io.tmpdir"), "ws-scrcpy");
-        Files.createDirectories(targetDir);
-        Path target = targetDir.resolve("scrcpy-server.jar");
-        ClassPathResource resource = new ClassPathResource(properties.getScrcpy().getServerJarPath());
-        long resourceSize;
-        try {
-            resourceSize = resource.contentLength();
-        } catch (IOException ex) {
-            resourceSize = -1;
-        }
-        if (Files.exists(target) && (resourceSize <= 0 || Files.size(target) == resourceSize)) {
-            return target;
-        }
-        try (InputStream inputStream = resource.getInputStream()) {
-            Files.copy(inputStream, target, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+    private ServerJar serverJar() throws IOException {
+        ServerJar jar = serverJar;
+        if (jar == null) {
+            synchronized (this) {
+                jar = serverJar;
+                if (jar == null) {
+                    Path targetDir = Paths.get(System.getProperty("java.io.tmpdir"), "ws-scrcpy");
+                    ClassPathResource resource = new ClassPathResource(properties.getScrcpy().getServerJarPath());
+                    jar = ServerJar.extract(resource, targetDir);
+                    serverJar = jar;
+                }
+            }
         }
-        return target;
+        return jar;
     }
 
     /**
@@ -193,29 +332,23 @@ public class ScrcpyService {
             Integer.toString(port),
             Boolean.toString(listenOnAll)
         );
-        String command = "CLASSPATH=" + DEVICE_JAR_PATH
+        String command = "CLASSPATH=" + serverJar().devicePath()
             + " nohup app_process / " + serverPackage + " " + args
             + " >/dev/null 2>&1 &";
-        adbService.shell(udid, command);
+        adbService.shell(udid, command, AdbPriority.INTERACTIVE);
     }
 
     /**
-     * 等待 scrcpy server 启动成功（通过 PID 文件或进程列表）。
+     * 等待 scrcpy server 启动成功（通过 PID 文件或进程列表，每轮一次探测）。
      */
     private int waitForServer(String udid) throws IOException, InterruptedException {
         long deadline = System.nanoTime() + START_TIMEOUT.toNanos();
         int attempt = 0;
         while (System.nanoTime() < deadline) {
             attempt++;
-            Integer pid = readPidFile(udid).orElseGet(() -> {
-                try {
-                    return getServerPid(udid).orElse(null);
-                } catch (Exception ignored) {
-                    return null;
-                }
-            });
-            if (pid != null && pid > 0 && isScrcpyPid(udid, pid)) {
-                return pid;
+            Optional<Integer> pid = getServerPid(udid);
+            if (pid.isPresent()) {
+                return pid.get();
             }
             TimeUnit.MILLISECONDS.sleep(300L + attempt * 100L);
         }
@@ -223,38 +356,9 @@ public class ScrcpyService {
     }
 
     /**
-     * 读取设备端 PID 文件（scrcpy server 启动成功后写入）。
-     */
-    private Optional<Integer> readPidFile(String udid) throws IOException, InterruptedException {
-        String output = shell(udid, "test -f " + PID_FILE + " && cat " + PID_FILE);
-        if (output == null || output.isBlank()) {
-            return Optional.empty();
-        }
-        try {
-            return Optional.of(Integer.parseInt(output.trim()));
-        } catch (NumberFormatException ignored) {
-            return Optional.empty();
-        }
-    }
-
-    /**
-     * 校验 PID 是否仍为 scrcpy server。
-     */
-    private boolean isScrcpyPid(String udid, int pid) {
-        try {
-            String cmdline = readCmdline(udid, pid);
-            return isScrcpyServerCmdline(cmdline);
-        } catch (Exception ex) {
-            return false;
-        }
-    }
-
-    /**
-     * 执行 adb shell 命令并返回输出文本。
+     * 执行 adb shell 命令并返回输出文本（都在用户连接路径上，按交互优先级调度）。
      */
     private String shell(String udid, String command) throws IOException, InterruptedException {
-        List<String> args = List.of(properties.getAdb().getBin(), "-s", udid, "shell", command);
-        ProcessResult result = ProcessRunner.run(args, Duration.ofSeconds(8));
-        return String.join("\n", result.output()).trim();
+        return adbService.shellOutput(udid, command, Duration.ofSeconds(8), AdbPriority.INTERACTIVE);
     }
 }
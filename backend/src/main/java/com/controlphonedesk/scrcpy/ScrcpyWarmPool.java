@@ -0,0 +1,91 @@
+package com.controlphonedesk.scrcpy;
+
+import com.controlphonedesk.AppProperties;
+import com.controlphonedesk.adb.AdbDevice;
+import com.controlphonedesk.adb.AdbDeviceListener;
+import com.controlphonedesk.adb.AdbDeviceTracker;
+import jakarta.annotation.PostConstruct;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * 设备上线（状态变为 device）时在后台预热 scrcpy server 与 adb forward；
+ * 主机启动后设备跟踪的首次同步会把所有在线设备作为新接入设备上报，从而覆盖整个机架。
+ * 设备断开时清理对应状态（无论是否开启预热）。
+ */
+@Component
+public class ScrcpyWarmPool implements AdbDeviceListener {
+    private static final Logger log = LoggerFactory.getLogger(ScrcpyWarmPool.class);
+    private static final String STATE_DEVICE = "device";
+
+    private final ScrcpyService scrcpyService;
+    private final AdbDeviceTracker deviceTracker;
+    private final boolean enabled;
+    private final Semaphore permits;
+    private final Set<String> warming = ConcurrentHashMap.newKeySet();
+
+    public ScrcpyWarmPool(ScrcpyService scrcpyService, AdbDeviceTracker deviceTracker, AppProperties properties) {
+        this.scrcpyService = scrcpyService;
+        this.deviceTracker = deviceTracker;
+        AppProperties.Scrcpy scrcpy = properties.getScrcpy();
+        this.enabled = scrcpy.isWarmPool();
+        this.permits = new Semaphore(Math.max(1, scrcpy.getWarmPoolParallelism()));
+    }
+
+    @PostConstruct
+    public void register() {
+        deviceTracker.addListener(this);
+    }
+
+    @Override
+    public void onDeviceAttached(AdbDevice device) {
+        if (STATE_DEVICE.equals(device.getState())) {
+            schedule(device.getUdid());
+        }
+    }
+
+    @Override
+    public void onDeviceStateChanged(AdbDevice previous, AdbDevice current) {
+        if (STATE_DEVICE.equals(current.getState())) {
+            schedule(current.getUdid());
+        } else {
+            scrcpyService.deviceGone(current.getUdid());
+        }
+    }
+
+    @Override
+    public void onDeviceDetached(AdbDevice device) {
+        scrcpyService.deviceGone(device.getUdid());
+    }
+
+    /**
+     * 在虚拟线程上预热；同一设备只排队一次，并发数受 permits 限制。
+     */
+    private void schedule(String udid) {
+        if (!enabled || !warming.add(udid)) {
+            return;
+        }
+        Thread.ofVirtual().name("scrcpy-warm-" + udid).start(() -> {
+            try {
+                permits.acquire();
+                try {
+                    long start = System.nanoTime();
+                    scrcpyService.warmUp(udid);
+                    log.info("Scrcpy server warmed: udid={} took={}ms", udid, (System.nanoTime() - start) / 1_000_000);
+                } finally {
+                    permits.release();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (Exception ex) {
+                log.warn("Scrcpy warm-up failed: udid={} error={}", udid, ex.getMessage());
+            } finally {
+                warming.remove(udid);
+            }
+        });
+    }
+}
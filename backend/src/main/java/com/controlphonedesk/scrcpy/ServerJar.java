@@ -0,0 +1,59 @@
+package com.controlphonedesk.scrcpy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import org.springframework.core.io.Resource;
+
+/**
+ * 按内容寻址的 scrcpy server jar：本机与设备端文件名都带 SHA-256 前缀，
+ * 设备上已有同名且大小一致的文件即可跳过 push。
+ */
+record ServerJar(Path localPath, String sha256, long size, String devicePath) {
+    static final String DEVICE_DIR = "/data/local/tmp";
+    static final String DEVICE_GLOB = DEVICE_DIR + "/scrcpy-server*.jar";
+
+    /**
+     * 从 classpath 读取 jar，边拷贝边计算摘要，放到本机临时目录（同内容只落盘一次）。
+     */
+    static ServerJar extract(Resource resource, Path targetDir) throws IOException {
+        Files.createDirectories(targetDir);
+        Path temp = Files.createTempFile(targetDir, "scrcpy-server", ".tmp");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream input = new DigestInputStream(resource.getInputStream(), digest)) {
+                Files.copy(input, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            String fileName = "scrcpy-server-" + sha256.substring(0, 16) + ".jar";
+            Path target = targetDir.resolve(fileName);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new ServerJar(target, sha256, Files.size(target), DEVICE_DIR + "/" + fileName);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 设备端校验命令：文件存在时输出字节数，否则无输出。
+     */
+    String sizeCommand() {
+        return "[ -f " + devicePath + " ] && wc -c < " + devicePath;
+    }
+
+    boolean matchesDeviceSize(String output) {
+        try {
+            return Long.parseLong(output.trim()) == size;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+}
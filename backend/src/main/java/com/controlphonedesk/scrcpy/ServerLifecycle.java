@@ -0,0 +1,146 @@
+package com.controlphonedesk.scrcpy;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单台设备 server 的状态机：STOPPED → PUSHING → STARTING → RUNNING，任一步失败进入 FAILED。
+ * 同一时刻只有一个调用方（owner）推进状态，其余调用方等待 inFlight。
+ */
+class ServerLifecycle {
+    private final String udid;
+    private ServerState state = ServerState.STOPPED;
+    private long stateSinceNanos = System.nanoTime();
+    private long stateSinceEpochMs = System.currentTimeMillis();
+    private final Map<ServerState, Long> durationsMs = new EnumMap<>(ServerState.class);
+    private int pid = -1;
+    private String lastError;
+    private CompletableFuture<Integer> inFlight;
+    // 使用情况（供空闲回收按 LRU/LFU 挑选保温设备）：leases 为持有 server 的共享流数，为 0 时才算空闲
+    private int leases;
+    private long useCount;
+    private long lastUsedEpochMs;
+    private long idleSinceEpochMs = System.currentTimeMillis();
+    private long evictions;
+    private CompletableFuture<Void> eviction;
+
+    ServerLifecycle(String udid) {
+        this.udid = udid;
+    }
+
+    /**
+     * 已有进行中的启动时返回它（调用方加入等待），否则登记新的 future 并返回 null，调用方成为 owner。
+     */
+    synchronized CompletableFuture<Integer> joinOrBegin(CompletableFuture<Integer> candidate) {
+        if (inFlight != null) {
+            return inFlight;
+        }
+        inFlight = candidate;
+        return null;
+    }
+
+    synchronized void finish() {
+        inFlight = null;
+    }
+
+    synchronized void transition(ServerState next) {
+        if (next == state) {
+            return;
+        }
+        long now = System.nanoTime();
+        durationsMs.put(state, TimeUnit.NANOSECONDS.toMillis(now - stateSinceNanos));
+        state = next;
+        stateSinceNanos = now;
+        stateSinceEpochMs = System.currentTimeMillis();
+        if (next != ServerState.RUNNING) {
+            pid = -1;
+        }
+    }
+
+    synchronized void running(int pid) {
+        transition(ServerState.RUNNING);
+        this.pid = pid;
+        lastError = null;
+    }
+
+    synchronized void failed(Throwable error) {
+        transition(ServerState.FAILED);
+        lastError = error.getMessage();
+    }
+
+    synchronized ServerState state() {
+        return state;
+    }
+
+    /**
+     * 共享流开始使用 server（每个流打开时登记一次）。
+     */
+    synchronized void acquired() {
+        leases++;
+        useCount++;
+        lastUsedEpochMs = System.currentTimeMillis();
+    }
+
+    /**
+     * 共享流拆除时归还；最后一份租约归还时开始计算空闲时间。
+     */
+    synchronized void released() {
+        if (leases == 0) {
+            return;
+        }
+        leases--;
+        lastUsedEpochMs = System.currentTimeMillis();
+        if (leases == 0) {
+            idleSinceEpochMs = lastUsedEpochMs;
+        }
+    }
+
+    /**
+     * 空闲超过 idleMillis 且无人使用、无进行中的启动时开始回收：状态先置为 STOPPED，
+     * 返回的 future 在 server 停止后完成；不满足条件时返回 null。
+     */
+    synchronized CompletableFuture<Void> beginEviction(long idleMillis) {
+        if (leases > 0 || inFlight != null || eviction != null || state != ServerState.RUNNING) {
+            return null;
+        }
+        if (System.currentTimeMillis() - idleSinceEpochMs < idleMillis) {
+            return null;
+        }
+        transition(ServerState.STOPPED);
+        eviction = new CompletableFuture<>();
+        return eviction;
+    }
+
+    synchronized void endEviction() {
+        evictions++;
+        if (eviction != null) {
+            eviction.complete(null);
+            eviction = null;
+        }
+    }
+
+    /**
+     * 正在进行的回收（启动前需等待其结束，避免刚启动的 server 被杀掉）。
+     */
+    synchronized CompletableFuture<Void> pendingEviction() {
+        return eviction;
+    }
+
+    synchronized ServerStatus status() {
+        return new ServerStatus(
+            udid,
+            state,
+            pid,
+            stateSinceEpochMs,
+            Map.copyOf(durationsMs),
+            lastError,
+            leases > 0,
+            useCount,
+            lastUsedEpochMs,
+            idleSinceEpochMs,
+            evictions
+        );
+    }
+}
@@ -0,0 +1,70 @@
+package com.controlphonedesk.scrcpy;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * 一次设备端探测的结果：所有 app_process 的 pid 与 cmdline，以及 PID 文件内容。
+ */
+record ServerProbe(Map<Integer, String> processes, Integer pidFile) {
+    static final String PROCESS_PREFIX = "PID ";
+    static final String PID_FILE_PREFIX = "PIDFILE ";
+
+    /**
+     * 生成探测脚本：pidof 不可用时回退到 ps；每个进程一行 "PID <pid> <cmdline>"，最后一行 "PIDFILE <内容>"。
+     * cmdline 直接 cat 输出（命令替换会吞掉 NUL 分隔符），NUL 由 Java 侧替换。
+     */
+    static String script(String pidFilePath) {
+        return "pids=$(pidof app_process 2>/dev/null);"
+            + " [ -z \"$pids\" ] && pids=$(ps -A 2>/dev/null | grep app_process | while read u p rest; do echo $p; done);"
+            + " for p in $pids; do echo -n \"" + PROCESS_PREFIX + "$p \"; cat /proc/$p/cmdline 2>/dev/null; echo; done;"
+            + " echo \"" + PID_FILE_PREFIX + "$(cat " + pidFilePath + " 2>/dev/null)\"";
+    }
+
+    static ServerProbe parse(List<String> lines) {
+        Map<Integer, String> processes = new LinkedHashMap<>();
+        Integer pidFile = null;
+        for (String line : lines) {
+            if (line.startsWith(PID_FILE_PREFIX)) {
+                pidFile = parseInt(line.substring(PID_FILE_PREFIX.length()).trim());
+            } else if (line.startsWith(PROCESS_PREFIX)) {
+                String rest = line.substring(PROCESS_PREFIX.length());
+                int space = rest.indexOf(' ');
+                Integer pid = parseInt(space < 0 ? rest.trim() : rest.substring(0, space));
+                if (pid != null) {
+                    String cmdline = space < 0 ? "" : rest.substring(space + 1);
+                    processes.put(pid, cmdline.replace('\u0000', ' ').trim());
+                }
+            }
+        }
+        return new ServerProbe(processes, pidFile);
+    }
+
+    /**
+     * 优先采用 PID 文件中的进程（需仍为 server），否则取第一个匹配的进程。
+     */
+    Optional<Integer> serverPid(Predicate<String> isServer) {
+        if (pidFile != null && pidFile > 0 && isServer.test(processes.get(pidFile))) {
+            return Optional.of(pidFile);
+        }
+        return serverPids(isServer).stream().findFirst();
+    }
+
+    List<Integer> serverPids(Predicate<String> isServer) {
+        return processes.entrySet().stream()
+            .filter(entry -> isServer.test(entry.getValue()))
+            .map(Map.Entry::getKey)
+            .toList();
+    }
+
+    private static Integer parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
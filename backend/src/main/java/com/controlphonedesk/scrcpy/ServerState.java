@@ -0,0 +1,12 @@
+package com.controlphonedesk.scrcpy;
+
+/**
+ * 设备端 scrcpy server 的生命周期状态。
+ */
+public enum ServerState {
+    STOPPED,
+    PUSHING,
+    STARTING,
+    RUNNING,
+    FAILED
+}
@@ -0,0 +1,22 @@
+package com.controlphonedesk.scrcpy;
+
+import java.util.Map;
+
+/**
+ * 单台设备 scrcpy server 的状态快照；stateDurationsMs 为各状态最近一次停留时长，
+ * 其余字段为空闲回收使用的使用情况与回收次数。
+ */
+public record ServerStatus(
+    String udid,
+    ServerState state,
+    int pid,
+    long stateSinceEpochMs,
+    Map<ServerState, Long> stateDurationsMs,
+    String lastError,
+    boolean inUse,
+    long useCount,
+    long lastUsedEpochMs,
+    long idleSinceEpochMs,
+    long evictions
+) {
+}
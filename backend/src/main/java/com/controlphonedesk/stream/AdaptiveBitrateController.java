@@ -0,0 +1,249 @@
+package com.controlphonedesk.stream;
+
+import com.controlphonedesk.AppProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * 自适应码率：定期采样每个观看会话的画面队列深度、平均发送延迟与丢帧率，
+ * 按多观看者策略得出设备的拥塞信号，带迟滞地逐档降低/恢复码率、帧率与最大尺寸，
+ * 通过 TYPE_CHANGE_STREAM_PARAMETERS 下发（以浏览器最近一次请求的参数为基准）。
+ * 降档快（连续 downSamples 次拥塞）、升档慢（连续 upSamples 次畅通），避免来回振荡。
+ * 观看者的画质下限（如设备墙缩略图）也在这里生效：所有观看者都只需要低画质时，即使不拥塞也降到该档位。
+ */
+@Component
+public class AdaptiveBitrateController {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveBitrateController.class);
+    // 各档相对基准的比例：码率、帧率、最大尺寸
+    private static final double[][] LEVELS = {
+        {1.0, 1.0, 1.0},
+        {0.7, 1.0, 1.0},
+        {0.5, 0.8, 1.0},
+        {0.35, 0.6, 0.75},
+        {0.25, 0.5, 0.5},
+    };
+    /** 最低画质档位 */
+    static final int LOWEST_LEVEL = LEVELS.length - 1;
+    private static final int MIN_FPS = 10;
+    // 基准不限帧率时按此估算降档后的帧率
+    private static final int ASSUMED_MAX_FPS = 60;
+    private static final int MIN_SIZE = 240;
+
+    private final DeviceStreamHub streamHub;
+    private final AppProperties.Abr config;
+    private final Map<String, State> states = new HashMap<>();
+    private volatile boolean running;
+    private Thread worker;
+
+    public AdaptiveBitrateController(DeviceStreamHub streamHub, AppProperties properties) {
+        this.streamHub = streamHub;
+        this.config = properties.getAbr();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        running = true;
+        worker = Thread.ofVirtual().name("adaptive-bitrate").start(this::sampleLoop);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    private void sampleLoop() {
+        while (running) {
+            try {
+                Thread.sleep(Math.max(100, config.getIntervalMs()));
+                sample();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                log.warn("Adaptive bitrate sample failed: {}", ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 一轮采样（只在采样线程上调用）。
+     */
+    void sample() {
+        Map<String, State> seen = new HashMap<>();
+        for (DeviceStream stream : streamHub.activeStreams()) {
+            State state = states.get(stream.getUdid());
+            if (state == null || state.stream != stream) {
+                state = new State(stream);
+            }
+            seen.put(stream.getUdid(), state);
+            evaluate(state);
+        }
+        states.clear();
+        states.putAll(seen);
+    }
+
+    private void evaluate(State state) {
+        DeviceStream stream = state.stream;
+        byte[] requested = stream.requestedVideoSettings();
+        if (requested != state.baseline) {
+            // 浏览器重新指定了参数（已直接下发），以其为新基准从头开始
+            state.baseline = requested;
+            state.level = 0;
+            state.applied = 0;
+            state.congestedRuns = 0;
+            state.clearRuns = 0;
+            stream.resetAdaptiveLevel();
+        }
+        List<ViewerStats> viewers = stream.viewerStats();
+        int signal = aggregate(viewerSignals(state, viewers));
+        if (signal < 0) {
+            state.clearRuns = 0;
+            if (++state.congestedRuns >= Math.max(1, config.getDownSamples()) && state.level < LEVELS.length - 1) {
+                state.level++;
+                state.congestedRuns = 0;
+            }
+        } else if (signal > 0) {
+            state.congestedRuns = 0;
+            if (++state.clearRuns >= Math.max(1, config.getUpSamples()) && state.level > 0) {
+                state.level--;
+                state.clearRuns = 0;
+            }
+        } else {
+            state.congestedRuns = 0;
+            state.clearRuns = 0;
+        }
+        // 拥塞档位与画质下限取较低的画质；下限以要求最高画质的观看者为准
+        int target = Math.max(state.level, qualityFloor(viewers));
+        if (target != state.applied) {
+            apply(state, target);
+        }
+    }
+
+    private static int qualityFloor(List<ViewerStats> viewers) {
+        int floor = viewers.stream().mapToInt(ViewerStats::qualityFloor).min().orElse(0);
+        return Math.max(0, Math.min(LEVELS.length - 1, floor));
+    }
+
+    /**
+     * 每个观看者的信号：-1 拥塞、0 中间、1 畅通。丢帧率按本周期的增量计算。
+     */
+    private List<Integer> viewerSignals(State state, List<ViewerStats> viewers) {
+        List<Integer> signals = new ArrayList<>(viewers.size());
+        Map<String, long[]> counters = new HashMap<>();
+        for (ViewerStats viewer : viewers) {
+            long[] previous = state.counters.getOrDefault(viewer.sessionId(), new long[2]);
+            long sent = viewer.sentFrames() - previous[0];
+            long dropped = viewer.droppedFrames() - previous[1];
+            counters.put(viewer.sessionId(), new long[] {viewer.sentFrames(), viewer.droppedFrames()});
+            double dropRate = dropped / (double) Math.max(1, sent + dropped);
+            if (viewer.queueDepth() >= config.getQueueHigh()
+                || viewer.avgSendLatencyMs() >= config.getLatencyHighMs()
+                || dropRate >= config.getDropRateHigh()) {
+                signals.add(-1);
+            } else if (viewer.queueDepth() <= config.getQueueLow()
+                && viewer.avgSendLatencyMs() <= config.getLatencyLowMs()
+                && dropped == 0) {
+                signals.add(1);
+            } else {
+                signals.add(0);
+            }
+        }
+        state.counters = counters;
+        return signals;
+    }
+
+    /**
+     * 按策略合并多个观看者的信号：slowest 取最差者，fastest 取最好者，median 取中位数。
+     */
+    private int aggregate(List<Integer> signals) {
+        if (signals.isEmpty()) {
+            return 0;
+        }
+        List<Integer> sorted = signals.stream().sorted().toList();
+        String policy = config.getViewerPolicy();
+        if ("fastest".equalsIgnoreCase(policy)) {
+            return sorted.get(sorted.size() - 1);
+        }
+        if ("median".equalsIgnoreCase(policy)) {
+            return sorted.get(sorted.size() / 2);
+        }
+        return sorted.get(0);
+    }
+
+    private void apply(State state, int level) {
+        if (state.baseline == null) {
+            // 浏览器尚未下发过视频参数，无从改写
+            return;
+        }
+        ByteBuffer message = ByteBuffer.wrap(state.baseline.clone());
+        ControlMessages.VideoSettings base = ControlMessages.parseVideoSettings(message);
+        if (base == null) {
+            return;
+        }
+        ControlMessages.VideoSettings adjusted = scale(base, LEVELS[level]);
+        adjusted.writeTo(message);
+        int previous = state.applied;
+        state.applied = level;
+        state.stream.sendVideoSettings(message.array(), level);
+        log.info("Adaptive bitrate: udid={} level {} -> {} (congestion={}) bitrate={} maxFps={} size={}x{}",
+            state.stream.getUdid(), previous, level, state.level, adjusted.bitrate(), adjusted.maxFps(),
+            adjusted.width(), adjusted.height());
+    }
+
+    private ControlMessages.VideoSettings scale(ControlMessages.VideoSettings base, double[] ratios) {
+        int bitrate = base.bitrate();
+        if (ratios[0] < 1.0) {
+            bitrate = Math.max(Math.min(config.getMinBitrate(), base.bitrate()), (int) (base.bitrate() * ratios[0]));
+        }
+        int maxFps = base.maxFps();
+        if (ratios[1] < 1.0) {
+            int reference = maxFps > 0 ? maxFps : ASSUMED_MAX_FPS;
+            maxFps = Math.max(Math.min(MIN_FPS, reference), (int) Math.round(reference * ratios[1]));
+        }
+        int width = base.width();
+        int height = base.height();
+        // 最大尺寸为 0（不限制）时不知道屏幕实际大小，不缩放
+        if (ratios[2] < 1.0 && width > 0 && height > 0) {
+            width = scaleSize(width, ratios[2]);
+            height = scaleSize(height, ratios[2]);
+        }
+        return new ControlMessages.VideoSettings(bitrate, maxFps, width, height);
+    }
+
+    /**
+     * 缩放并向下取 8 的倍数（编码器对齐要求），不低于 MIN_SIZE（原值更小时保持原值）。
+     */
+    private static int scaleSize(int size, double ratio) {
+        int scaled = (int) (size * ratio) & ~7;
+        return Math.max(Math.min(MIN_SIZE, size), scaled);
+    }
+
+    private static class State {
+        private final DeviceStream stream;
+        private byte[] baseline;
+        // 拥塞信号决定的档位与实际下发的档位（还受观看者画质下限约束）
+        private int level;
+        private int applied;
+        private int congestedRuns;
+        private int clearRuns;
+        private Map<String, long[]> counters = new HashMap<>();
+
+        private State(DeviceStream stream) {
+            this.stream = stream;
+        }
+    }
+}
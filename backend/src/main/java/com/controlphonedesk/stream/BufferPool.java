@@ -0,0 +1,135 @@
+package com.controlphonedesk.stream;
+
+import com.controlphonedesk.AppProperties;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Component;
+
+/**
+ * 视频帧缓冲池：按 2 的幂分级缓存 direct ByteBuffer，避免每帧分配 byte[] 造成年轻代抖动。
+ * 关闭 zeroCopyRelay 时退化为按需分配堆内存（不池化）。
+ */
+@Component
+public class BufferPool {
+    private static final int MIN_CLASS_SHIFT = 12; // 4 KiB
+    private static final int MAX_CLASS_SHIFT = 23; // 8 MiB
+
+    private final boolean pooled;
+    private final long maxPooledBytes;
+    private final ConcurrentLinkedDeque<ByteBuffer>[] classes;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(AppProperties properties) {
+        AppProperties.Stream config = properties.getStream();
+        this.pooled = config.isZeroCopyRelay();
+        this.maxPooledBytes = config.getBufferPoolMaxMb() * 1024L * 1024L;
+        this.classes = new ConcurrentLinkedDeque[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new ConcurrentLinkedDeque<>();
+        }
+    }
+
+    /**
+     * 获取容量不小于 minCapacity 的缓冲区（position=0, limit=capacity）。
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        if (!pooled) {
+            return ByteBuffer.allocate(minCapacity);
+        }
+        int index = classIndex(minCapacity);
+        if (index < 0) {
+            misses.incrementAndGet();
+            return ByteBuffer.allocateDirect(minCapacity);
+        }
+        ByteBuffer buffer = classes[index].pollFirst();
+        if (buffer != null) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            hits.incrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+        misses.incrementAndGet();
+        return ByteBuffer.allocateDirect(1 << (index + MIN_CLASS_SHIFT));
+    }
+
+    /**
+     * 归还缓冲区；非本池规格或超出缓存上限时直接丢弃，交给 GC 回收。
+     */
+    public void release(ByteBuffer buffer) {
+        if (!pooled || buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        int index = classIndex(capacity);
+        if (index < 0 || (1 << (index + MIN_CLASS_SHIFT)) != capacity) {
+            discarded.incrementAndGet();
+            return;
+        }
+        if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+            pooledBytes.addAndGet(-capacity);
+            discarded.incrementAndGet();
+            return;
+        }
+        buffer.clear();
+        // LIFO 复用，最近归还的缓冲区更可能仍在 CPU 缓存中
+        classes[index].offerFirst(buffer);
+    }
+
+    /**
+     * 扩容：把 buffer 中已写入的数据迁移到更大的缓冲区，并归还旧缓冲区。
+     */
+    public ByteBuffer grow(ByteBuffer buffer, int additional) {
+        int required = buffer.position() + additional;
+        if (required <= buffer.capacity()) {
+            return buffer;
+        }
+        ByteBuffer larger = acquire(Math.max(required, buffer.capacity() * 2));
+        buffer.flip();
+        larger.put(buffer);
+        release(buffer);
+        return larger;
+    }
+
+    /**
+     * 复制一段数据到池化缓冲区，返回已 flip 的缓冲区。
+     */
+    public ByteBuffer copyOf(ByteBuffer source) {
+        ByteBuffer copy = acquire(source.remaining());
+        copy.put(source);
+        copy.flip();
+        return copy;
+    }
+
+    public boolean isPooled() {
+        return pooled;
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getDiscarded() {
+        return discarded.get();
+    }
+
+    private static int classIndex(int capacity) {
+        int shift = Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1));
+        if (shift > MAX_CLASS_SHIFT) {
+            return -1;
+        }
+        return shift - MIN_CLASS_SHIFT;
+    }
+}
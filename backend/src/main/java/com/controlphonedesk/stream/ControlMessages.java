@@ -0,0 +1,161 @@
+package com.controlphonedesk.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 浏览器发往设备的 scrcpy 控制消息（首字节为类型，其余字段大端）的分类与解析：输入类消息走优先通道，
+ * 调整视频参数与文件推送等较大或非实时的消息走普通通道；触摸与滚动消息可解析后合并。
+ */
+public final class ControlMessages {
+    public static final int TYPE_KEYCODE = 0;
+    public static final int TYPE_TEXT = 1;
+    public static final int TYPE_TOUCH = 2;
+    public static final int TYPE_SCROLL = 3;
+    public static final int TYPE_BACK_OR_SCREEN_ON = 4;
+    public static final int TYPE_EXPAND_NOTIFICATION_PANEL = 5;
+    public static final int TYPE_COLLAPSE_NOTIFICATION_PANEL = 6;
+    public static final int TYPE_GET_CLIPBOARD = 7;
+    public static final int TYPE_SET_CLIPBOARD = 8;
+    public static final int TYPE_SET_SCREEN_POWER_MODE = 9;
+    public static final int TYPE_ROTATE_DEVICE = 10;
+    public static final int TYPE_CHANGE_STREAM_PARAMETERS = 101;
+    public static final int TYPE_PUSH_FILE = 102;
+
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+    public static final int ACTION_MOVE = 2;
+
+    /** 触摸：type(1) action(1) pointerId(8) x(4) y(4) width(2) height(2) pressure(2) buttons(4) */
+    public static final int TOUCH_LENGTH = 28;
+    /** 滚动：type(1) x(4) y(4) width(2) height(2) hScroll(4) vScroll(4) */
+    public static final int SCROLL_LENGTH = 21;
+    /**
+     * 视频参数（ws-scrcpy VideoSettings）：type(1) bitrate(4) maxFps(4) iFrameInterval(1) width(2) height(2)
+     * crop(8) sendFrameMeta(1) lockedVideoOrientation(1) displayId(4) codecOptions(4+n) encoderName(4+n)，
+     * 这里只读写前面的定长字段，其余原样保留。
+     */
+    public static final int VIDEO_SETTINGS_MIN_LENGTH = 14;
+
+    private ControlMessages() {
+    }
+
+    /**
+     * 消息类型字节，空消息返回 -1。
+     */
+    public static int type(ByteBuffer message) {
+        return message.hasRemaining() ? message.get(message.position()) & 0xff : -1;
+    }
+
+    /**
+     * 是否为交互控制消息（按键、触摸、滚动、剪贴板等，原版 scrcpy 定义的类型均小于 100）。
+     */
+    public static boolean isInteractive(ByteBuffer message) {
+        int type = type(message);
+        return type >= TYPE_KEYCODE && type <= TYPE_ROTATE_DEVICE;
+    }
+
+    /**
+     * 解析触摸消息，类型不符或长度不足时返回 null。
+     */
+    public static Touch parseTouch(ByteBuffer message) {
+        if (type(message) != TYPE_TOUCH || message.remaining() < TOUCH_LENGTH) {
+            return null;
+        }
+        int base = message.position();
+        return new Touch(
+            message.get(base + 1) & 0xff,
+            message.getLong(base + 2),
+            message.getInt(base + 10),
+            message.getInt(base + 14),
+            message.getShort(base + 18) & 0xffff,
+            message.getShort(base + 20) & 0xffff,
+            message.getShort(base + 22) & 0xffff,
+            message.getInt(base + 24)
+        );
+    }
+
+    /**
+     * 解析滚动消息，类型不符或长度不足时返回 null。
+     */
+    public static Scroll parseScroll(ByteBuffer message) {
+        if (type(message) != TYPE_SCROLL || message.remaining() < SCROLL_LENGTH) {
+            return null;
+        }
+        int base = message.position();
+        return new Scroll(
+            message.getInt(base + 1),
+            message.getInt(base + 5),
+            message.getShort(base + 9) & 0xffff,
+            message.getShort(base + 11) & 0xffff,
+            message.getInt(base + 13),
+            message.getInt(base + 17)
+        );
+    }
+
+    /**
+     * 解析视频参数消息的码率、帧率与最大尺寸，类型不符或长度不足时返回 null。
+     */
+    public static VideoSettings parseVideoSettings(ByteBuffer message) {
+        if (type(message) != TYPE_CHANGE_STREAM_PARAMETERS || message.remaining() < VIDEO_SETTINGS_MIN_LENGTH) {
+            return null;
+        }
+        int base = message.position();
+        return new VideoSettings(
+            message.getInt(base + 1),
+            message.getInt(base + 5),
+            message.getShort(base + 10) & 0xffff,
+            message.getShort(base + 12) & 0xffff
+        );
+    }
+
+    public record Touch(int action, long pointerId, int x, int y, int width, int height, int pressure, int buttons) {
+        public boolean isMove() {
+            return action == ACTION_MOVE;
+        }
+    }
+
+    public record Scroll(int x, int y, int width, int height, int hScroll, int vScroll) {
+        /**
+         * 合并后一次滚动：位置取后者，滚动量相加（饱和到 int 范围）。
+         */
+        public Scroll merge(Scroll next) {
+            return new Scroll(next.x, next.y, next.width, next.height,
+                saturatedAdd(hScroll, next.hScroll), saturatedAdd(vScroll, next.vScroll));
+        }
+
+        /**
+         * 覆盖写入 message（从 position 开始，不移动 position）。
+         */
+        public void writeTo(ByteBuffer message) {
+            int base = message.position();
+            message.put(base, (byte) TYPE_SCROLL);
+            message.putInt(base + 1, x);
+            message.putInt(base + 5, y);
+            message.putShort(base + 9, (short) width);
+            message.putShort(base + 11, (short) height);
+            message.putInt(base + 13, hScroll);
+            message.putInt(base + 17, vScroll);
+        }
+
+        private static int saturatedAdd(int a, int b) {
+            long sum = (long) a + b;
+            return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, sum));
+        }
+    }
+
+    /**
+     * 视频参数中可调整的部分；width/height 为画面最大尺寸，0 表示不限制；maxFps 为 0 表示不限制。
+     */
+    public record VideoSettings(int bitrate, int maxFps, int width, int height) {
+        /**
+         * 覆盖写入 message 中对应字段（从 position 开始，不移动 position），其余字段不变。
+         */
+        public void writeTo(ByteBuffer message) {
+            int base = message.position();
+            message.putInt(base + 1, bitrate);
+            message.putInt(base + 5, maxFps);
+            message.putShort(base + 10, (short) width);
+            message.putShort(base + 12, (short) height);
+        }
+    }
+}
@@ -0,0 +1,587 @@
+package com.controlphonedesk.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+
+/**
+ * 单台设备的共享视频流：一条设备侧 WebSocket 上行，向 N 个浏览器会话扇出。
+ * 有 fMP4 观看者时在扇出锁内把每帧封装一次，所有 fMP4 观看者共享同一份封装结果。
+ * 生命周期由 {@link DeviceStreamHub} 管理（加锁于本对象）。
+ */
+public class DeviceStream {
+    private static final Logger log = LoggerFactory.getLogger(DeviceStream.class);
+    private static final long PROBE_BASE_DELAY_MS = 50;
+    private static final long PROBE_MAX_DELAY_MS = 500;
+
+    private final String udid;
+    private final BufferPool bufferPool;
+    private final int sessionQueueCapacity;
+    private final Map<ViewerSink, ViewerSession> viewers = new ConcurrentHashMap<>();
+    private final List<StreamTap> taps = new CopyOnWriteArrayList<>();
+    private final AtomicLong receivedFrames = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final LatencyTracker upstreamControlLatency = new LatencyTracker();
+    private final AtomicLong coalescedControl = new AtomicLong();
+    private final boolean coalesceControl;
+    private final long scrollCoalesceNanos;
+    private final long previewIntervalNanos;
+    // 上行发送队列，由 sendLock 保护
+    private final Object sendLock = new Object();
+    private final ArrayDeque<Outgoing> controlLane = new ArrayDeque<>();
+    private final ArrayDeque<Outgoing> bulkLane = new ArrayDeque<>();
+    private boolean sending;
+    private volatile UpstreamTransport.Connection upstream;
+    private volatile String transportName;
+    private volatile int localPort = -1;
+    private volatile boolean closed;
+    private volatile StreamSetup setup;
+    private volatile byte[] requestedVideoSettings;
+    private volatile int adaptiveLevel;
+    private CompletableFuture<Void> opening;
+    // 本流是否持有一份 server 使用租约，保证打开时登记一次、拆除时只归还一次
+    private final AtomicBoolean serverLease = new AtomicBoolean();
+    // 扇出与加入观看者互斥：保证新观看者拿到的缓存帧与后续实时帧之间不重不漏
+    private final ReentrantLock fanOutLock = new ReentrantLock();
+    private final GopCache gopCache;
+    // fMP4 封装器与封装后的 GOP 缓存，只在有 fMP4 观看者时启用（扇出锁内访问）
+    private final GopCache fmp4Cache;
+    private Fmp4Remuxer remuxer;
+    private Runnable onUpstreamClosed = () -> {};
+
+    DeviceStream(
+        String udid,
+        BufferPool bufferPool,
+        int sessionQueueCapacity,
+        long gopCacheMaxBytes,
+        boolean coalesceControl,
+        long scrollCoalesceMillis,
+        long previewIntervalMillis
+    ) {
+        this.udid = udid;
+        this.bufferPool = bufferPool;
+        this.sessionQueueCapacity = sessionQueueCapacity;
+        this.gopCache = new GopCache(gopCacheMaxBytes);
+        this.fmp4Cache = new GopCache(gopCacheMaxBytes);
+        this.coalesceControl = coalesceControl;
+        this.scrollCoalesceNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, scrollCoalesceMillis));
+        // 间隔为 0 会使预览退化为普通模式，至少 1 毫秒
+        this.previewIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, previewIntervalMillis));
+    }
+
+    public String getUdid() {
+        return udid;
+    }
+
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    public int viewerCount() {
+        return viewers.size();
+    }
+
+    /**
+     * 没有观看者也没有旁路消费者，可以释放上行。
+     */
+    boolean isIdle() {
+        return viewers.isEmpty() && taps.isEmpty();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    boolean isConnected() {
+        return upstream != null;
+    }
+
+    /**
+     * 异步连接设备侧 WebSocket，结果为握手次数。刚启动的 server 可能尚未监听：
+     * adb forward 会接受连接随即关闭，握手快速失败，因此按短间隔指数退避反复探测直到总超时，
+     * 等待通过延迟调度完成，不占用线程。
+     */
+    CompletableFuture<Integer> connect(UpstreamTransport transport, int localPort, Duration timeout, Runnable onUpstreamClosed) {
+        this.localPort = localPort;
+        this.transportName = transport.name();
+        this.onUpstreamClosed = onUpstreamClosed;
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        probe(transport, localPort, System.nanoTime() + timeout.toNanos(), 1, result);
+        return result;
+    }
+
+    private void probe(UpstreamTransport transport, int localPort, long deadline, int attempt, CompletableFuture<Integer> result) {
+        long remaining = deadline - System.nanoTime();
+        transport.connect(localPort, Duration.ofNanos(Math.max(TimeUnit.MILLISECONDS.toNanos(1), remaining)), new Receiver())
+            .whenComplete((connection, error) -> {
+                if (error == null) {
+                    if (closed) {
+                        connection.abort();
+                        result.completeExceptionally(new IOException("Stream closed: " + udid));
+                        return;
+                    }
+                    upstream = connection;
+                    result.complete(attempt);
+                    return;
+                }
+                long delay = Math.min(PROBE_MAX_DELAY_MS, PROBE_BASE_DELAY_MS << Math.min(attempt - 1, 4));
+                if (closed || System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) >= deadline) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause()
+                        : error;
+                    result.completeExceptionally(cause);
+                    return;
+                }
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                    .execute(() -> probe(transport, localPort, deadline, attempt + 1, result));
+            });
+    }
+
+    /**
+     * 首个观看者发起的建立过程，后续观看者等待同一结果（由 hub 在本对象锁内设置）。
+     */
+    CompletableFuture<Void> opening() {
+        return opening;
+    }
+
+    void setOpening(CompletableFuture<Void> opening) {
+        this.opening = opening;
+    }
+
+    /**
+     * 登记持有 server 租约；已持有时返回 false。
+     */
+    boolean holdServerLease() {
+        return serverLease.compareAndSet(false, true);
+    }
+
+    /**
+     * 交还 server 租约；未持有（或已交还）时返回 false。
+     */
+    boolean dropServerLease() {
+        return serverLease.compareAndSet(true, false);
+    }
+
+    void setSetup(StreamSetup setup) {
+        this.setup = setup;
+    }
+
+    /**
+     * 加入观看者：启动其写线程，先补发缓存的 scrcpy_initial、SPS/PPS 与当前 GOP，再接收实时帧。
+     * 预览观看者共用同一条上行，只是在自己的队列里筛掉非关键帧，不增加设备端开销。
+     * joinStartedAt 为浏览器连接到达的时间（System.nanoTime），用于统计加入等待时间。
+     */
+    void addViewer(ViewerSink sink, long joinStartedAt) {
+        ViewerSession viewer = new ViewerSession(sink, sessionQueueCapacity, System.nanoTime() - joinStartedAt,
+            sink.preview() ? previewIntervalNanos : 0);
+        viewer.start();
+        fanOutLock.lock();
+        try {
+            if (gopCache.hasKeyFrame()) {
+                // 流已在播放：新观看者的首个视频参数不再下发，避免重启编码器打断其他人
+                viewer.skipJoinSettings();
+            }
+            if (sink.format() == StreamFormat.FMP4) {
+                if (remuxer == null) {
+                    startRemux();
+                }
+                fmp4Cache.replayTo(viewer);
+            } else {
+                gopCache.replayTo(viewer);
+            }
+            viewers.put(sink, viewer);
+        } finally {
+            fanOutLock.unlock();
+        }
+    }
+
+    /**
+     * 移除观看者并停止其写线程，返回是否确实移除。
+     */
+    boolean removeViewer(ViewerSink sink) {
+        ViewerSession viewer = viewers.remove(sink);
+        if (viewer == null) {
+            return false;
+        }
+        viewer.close();
+        if (sink.format() == StreamFormat.FMP4) {
+            fanOutLock.lock();
+            try {
+                if (viewers.keySet().stream().noneMatch(other -> other.format() == StreamFormat.FMP4)) {
+                    stopRemux();
+                }
+            } finally {
+                fanOutLock.unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 挂接旁路消费者：先补发缓存的参数集与当前 GOP，再接收实时帧。
+     */
+    void addTap(StreamTap tap) {
+        fanOutLock.lock();
+        try {
+            gopCache.forEachCached(tap::onFrame);
+            taps.add(tap);
+        } finally {
+            fanOutLock.unlock();
+        }
+    }
+
+    boolean removeTap(StreamTap tap) {
+        return taps.remove(tap);
+    }
+
+    /**
+     * 启用 fMP4 封装（调用方持有扇出锁）：先把已缓存的原始帧封装进 fMP4 缓存，新观看者同样可以秒开。
+     */
+    private void startRemux() {
+        remuxer = new Fmp4Remuxer(bufferPool);
+        gopCache.forEachCached(frame -> {
+            StreamFrame muxed = remuxer.remux(frame);
+            if (muxed != null) {
+                fmp4Cache.update(muxed);
+                muxed.release();
+            }
+        });
+        if (gopCache.isTruncated()) {
+            fmp4Cache.markTruncated();
+        }
+    }
+
+    private void stopRemux() {
+        remuxer = null;
+        fmp4Cache.clear();
+    }
+
+    public StreamStats stats() {
+        int gopFrames;
+        long gopBytes;
+        fanOutLock.lock();
+        try {
+            gopFrames = gopCache.gopFrames();
+            gopBytes = gopCache.gopBytes();
+        } finally {
+            fanOutLock.unlock();
+        }
+        return new StreamStats(
+            udid,
+            localPort,
+            transportName,
+            receivedFrames.get(),
+            receivedBytes.get(),
+            gopFrames,
+            gopBytes,
+            setup,
+            adaptiveLevel,
+            upstreamControlLatency.count(),
+            coalescedControl.get(),
+            upstreamControlLatency.lastMs(),
+            upstreamControlLatency.avgMs(),
+            upstreamControlLatency.maxMs(),
+            viewers.values().stream().map(ViewerSession::stats).toList()
+        );
+    }
+
+    /**
+     * 浏览器 -> 设备：多个观看者共用一条上行，传输层不允许并发发送，需串行化。
+     * 交互控制消息（触摸、按键等）走优先通道，只需等待正在发送的一条消息；其余消息按序走普通通道。
+     * source 只在调用期间有效（容器会复用其缓冲区），这里拷贝到池化缓冲区，发送完成后归还。
+     */
+    public void sendBinary(ViewerSink from, ByteBuffer source) {
+        if (upstream == null || closed) {
+            return;
+        }
+        if (ControlMessages.type(source) == ControlMessages.TYPE_CHANGE_STREAM_PARAMETERS) {
+            ViewerSession viewer = viewers.get(from);
+            if (viewer != null && viewer.takeJoinSettingsSkip()) {
+                return;
+            }
+            // 浏览器请求的视频参数作为自适应码率的基准
+            byte[] settings = new byte[source.remaining()];
+            source.duplicate().get(settings);
+            requestedVideoSettings = settings;
+        }
+        boolean control = ControlMessages.isInteractive(source);
+        enqueueUpstream(new Outgoing(from, bufferPool.copyOf(source), null, control, System.nanoTime()));
+    }
+
+    public void sendText(String text) {
+        if (upstream == null || closed) {
+            return;
+        }
+        enqueueUpstream(new Outgoing(null, null, text, false, System.nanoTime()));
+    }
+
+    /**
+     * 浏览器最近一次实际下发到设备的视频参数消息（含类型字节），尚未下发时为 null。
+     * 每次下发都是新数组，调用方可按引用判断是否变化；不得修改。
+     */
+    byte[] requestedVideoSettings() {
+        return requestedVideoSettings;
+    }
+
+    /**
+     * 由自适应码率下发调整后的视频参数（走普通通道，不改变浏览器请求的基准）。
+     */
+    void sendVideoSettings(byte[] message, int level) {
+        if (upstream == null || closed) {
+            return;
+        }
+        adaptiveLevel = level;
+        enqueueUpstream(new Outgoing(null, bufferPool.copyOf(ByteBuffer.wrap(message)), null, false, System.nanoTime()));
+    }
+
+    void resetAdaptiveLevel() {
+        adaptiveLevel = 0;
+    }
+
+    List<ViewerStats> viewerStats() {
+        return viewers.values().stream().map(ViewerSession::stats).toList();
+    }
+
+    private void enqueueUpstream(Outgoing outgoing) {
+        synchronized (sendLock) {
+            if (outgoing.control() && sending && coalesce(outgoing)) {
+                release(outgoing);
+                return;
+            }
+            (outgoing.control() ? controlLane : bulkLane).addLast(outgoing);
+            if (sending) {
+                return;
+            }
+            sending = true;
+        }
+        pumpUpstream();
+    }
+
+    /**
+     * 上行积压时合并控制消息（调用方持有 sendLock）：只与优先队列末尾、同一会话的消息合并，
+     * 同一指针的连续 MOVE 只保留最新位置，时间窗口内的连续滚动累加滚动量；
+     * DOWN/UP 与按键不参与合并，因此它们之间的相对顺序不变。合并成功返回 true。
+     */
+    private boolean coalesce(Outgoing incoming) {
+        if (!coalesceControl) {
+            return false;
+        }
+        Outgoing last = controlLane.peekLast();
+        if (last == null || last.source() != incoming.source()) {
+            return false;
+        }
+        ByteBuffer queued = last.payload();
+        ByteBuffer next = incoming.payload();
+        int type = ControlMessages.type(next);
+        if (type != ControlMessages.type(queued) || queued.remaining() != next.remaining()) {
+            return false;
+        }
+        if (type == ControlMessages.TYPE_TOUCH) {
+            ControlMessages.Touch previous = ControlMessages.parseTouch(queued);
+            ControlMessages.Touch current = ControlMessages.parseTouch(next);
+            if (previous == null || current == null || !previous.isMove() || !current.isMove()
+                || previous.pointerId() != current.pointerId()) {
+                return false;
+            }
+            // 长度相同，直接覆盖为最新的 MOVE，保留原入队时间以如实统计延迟
+            queued.put(queued.position(), next, next.position(), next.remaining());
+        } else if (type == ControlMessages.TYPE_SCROLL) {
+            if (System.nanoTime() - last.enqueuedAt() > scrollCoalesceNanos) {
+                return false;
+            }
+            ControlMessages.Scroll previous = ControlMessages.parseScroll(queued);
+            ControlMessages.Scroll current = ControlMessages.parseScroll(next);
+            if (previous == null || current == null) {
+                return false;
+            }
+            previous.merge(current).writeTo(queued);
+        } else {
+            return false;
+        }
+        coalescedControl.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 逐条发送：同步完成的发送在循环内继续，异步完成的在回调中继续，同一时刻只有一条在途。
+     */
+    private void pumpUpstream() {
+        while (true) {
+            Outgoing next;
+            synchronized (sendLock) {
+                next = controlLane.pollFirst();
+                if (next == null) {
+                    next = bulkLane.pollFirst();
+                }
+                if (next == null || closed) {
+                    if (next != null) {
+                        release(next);
+                    }
+                    sending = false;
+                    return;
+                }
+            }
+            CompletableFuture<?> sent;
+            UpstreamTransport.Connection remote = upstream;
+            try {
+                sent = next.payload() != null ? remote.sendBinary(next.payload()) : remote.sendText(next.text());
+            } catch (RuntimeException ex) {
+                sent = CompletableFuture.failedFuture(ex);
+            }
+            if (!sent.isDone()) {
+                Outgoing inFlight = next;
+                sent.whenComplete((ignored, error) -> {
+                    finishUpstream(inFlight);
+                    pumpUpstream();
+                });
+                return;
+            }
+            finishUpstream(next);
+        }
+    }
+
+    private void finishUpstream(Outgoing outgoing) {
+        if (outgoing.control()) {
+            upstreamControlLatency.record(System.nanoTime() - outgoing.enqueuedAt());
+        }
+        release(outgoing);
+    }
+
+    private void release(Outgoing outgoing) {
+        if (outgoing.payload() != null) {
+            bufferPool.release(outgoing.payload());
+        }
+    }
+
+    /**
+     * 关闭上行连接（不关闭观看者会话，由调用方决定）。
+     */
+    void close() {
+        closed = true;
+        UpstreamTransport.Connection remote = upstream;
+        if (remote != null) {
+            remote.abort();
+        }
+        viewers.values().forEach(ViewerSession::close);
+        synchronized (sendLock) {
+            controlLane.forEach(this::release);
+            bulkLane.forEach(this::release);
+            controlLane.clear();
+            bulkLane.clear();
+        }
+        fanOutLock.lock();
+        try {
+            gopCache.clear();
+            stopRemux();
+        } finally {
+            fanOutLock.unlock();
+        }
+    }
+
+    /**
+     * 设备帧扇出：同一帧对象进入所有观看者的队列，每个队列各持有一次引用。
+     * fMP4 观看者收到的是同一份封装结果。只做入队，不在上行读取线程上执行网络写。
+     */
+    private void fanOut(StreamFrame frame) {
+        fanOutLock.lock();
+        StreamFrame muxed = null;
+        try {
+            if (closed) {
+                return;
+            }
+            gopCache.update(frame);
+            if (remuxer != null) {
+                muxed = remuxer.remux(frame);
+                if (muxed != null) {
+                    fmp4Cache.update(muxed);
+                }
+            }
+            for (ViewerSession viewer : viewers.values()) {
+                if (viewer.getSink().format() != StreamFormat.FMP4) {
+                    viewer.offer(frame.retain());
+                } else if (muxed != null) {
+                    viewer.offer(muxed.retain());
+                }
+            }
+            for (StreamTap tap : taps) {
+                tap.onFrame(frame);
+            }
+        } finally {
+            fanOutLock.unlock();
+            if (muxed != null) {
+                muxed.release();
+            }
+        }
+    }
+
+    private void fanOutText(String text) {
+        for (ViewerSession viewer : viewers.values()) {
+            viewer.offerText(text);
+        }
+    }
+
+    /**
+     * 上行断开：关闭所有观看者（浏览器会自行重连并重新建立上行）。
+     */
+    private void onUpstreamGone() {
+        if (closed) {
+            return;
+        }
+        log.info("Upstream closed: udid={} viewers={}", udid, viewers.size());
+        onUpstreamClosed.run();
+        for (ViewerSink sink : viewers.keySet()) {
+            sink.close(CloseStatus.SERVER_ERROR);
+        }
+        taps.forEach(StreamTap::onUpstreamClosed);
+    }
+
+    /**
+     * 上行消息接收：二进制消息包装为帧后扇出，流关闭后到达的消息直接归还缓冲区。
+     */
+    private class Receiver implements UpstreamTransport.Receiver {
+        @Override
+        public void onBinary(ByteBuffer message) {
+            if (closed) {
+                bufferPool.release(message);
+                return;
+            }
+            StreamFrame frame = StreamFrame.of(message, bufferPool);
+            receivedFrames.incrementAndGet();
+            receivedBytes.addAndGet(frame.size());
+            try {
+                fanOut(frame);
+            } finally {
+                frame.release();
+            }
+        }
+
+        @Override
+        public void onText(String text) {
+            if (!closed) {
+                fanOutText(text);
+            }
+        }
+
+        @Override
+        public void onClosed() {
+            onUpstreamGone();
+        }
+    }
+
+    private record Outgoing(ViewerSink source, ByteBuffer payload, String text, boolean control, long enqueuedAt) {
+    }
+}
@@ -0,0 +1,266 @@
+package com.controlphonedesk.stream;
+
+import com.controlphonedesk.AppProperties;
+import com.controlphonedesk.scrcpy.ScrcpyService;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * 按设备维护共享视频流：每个 udid 只保持一条设备侧上行连接和一个 adb forward，
+ * 由所有观看该设备的浏览器会话（以及录制等旁路消费者）共用。最后一个使用者离开时释放上行。
+ */
+@Component
+public class DeviceStreamHub {
+    private static final Logger log = LoggerFactory.getLogger(DeviceStreamHub.class);
+
+    private final ScrcpyService scrcpyService;
+    private final AppProperties properties;
+    private final BufferPool bufferPool;
+    private final UpstreamTransport transport;
+    private final Duration connectTimeout;
+    private final ExecutorService setupExecutor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("stream-setup-", 0).factory());
+    private final Map<String, DeviceStream> streams = new ConcurrentHashMap<>();
+
+    public DeviceStreamHub(
+        ScrcpyService scrcpyService,
+        AppProperties properties,
+        BufferPool bufferPool
+    ) {
+        this.scrcpyService = scrcpyService;
+        this.properties = properties;
+        this.bufferPool = bufferPool;
+        if ("nio".equalsIgnoreCase(properties.getScrcpy().getTransport())) {
+            this.transport = new NioWebSocketTransport(bufferPool);
+        } else {
+            HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+            this.transport = new HttpClientTransport(httpClient, bufferPool);
+        }
+        this.connectTimeout = Duration.ofMillis(Math.max(1, properties.getStream().getConnectTimeoutMs()));
+    }
+
+    /**
+     * 将浏览器会话异步挂到设备流上；首个观看者发起启动 server、建立 forward 并连接设备，
+     * 并发加入同一设备的会话等待同一个建立过程，随后复用同一条上行。调用方不会被阻塞。
+     */
+    public CompletableFuture<DeviceStream> attach(String udid, ViewerSink sink) {
+        long joinStartedAt = System.nanoTime();
+        return attach(udid, stream -> stream.addViewer(sink, joinStartedAt));
+    }
+
+    /**
+     * 挂接旁路消费者（如录制），与观看者一样会按需建立上行，并在挂接期间保持上行。
+     */
+    public CompletableFuture<DeviceStream> attachTap(String udid, StreamTap tap) {
+        return attach(udid, stream -> stream.addTap(tap));
+    }
+
+    /**
+     * joiner 在设备流就绪后、持有流锁时执行，把调用方加入流。
+     */
+    private CompletableFuture<DeviceStream> attach(String udid, Consumer<DeviceStream> joiner) {
+        while (true) {
+            DeviceStream stream = streams.computeIfAbsent(udid, id -> newStream(id));
+            CompletableFuture<Void> ready;
+            synchronized (stream) {
+                if (stream.isClosed()) {
+                    // 正在被拆除，等待其从 map 中移除后重试
+                    streams.remove(udid, stream);
+                    continue;
+                }
+                ready = stream.opening();
+                if (ready == null) {
+                    ready = open(stream);
+                    stream.setOpening(ready);
+                }
+            }
+            return ready.thenCompose(ignored -> join(stream, joiner));
+        }
+    }
+
+    private CompletableFuture<DeviceStream> join(DeviceStream stream, Consumer<DeviceStream> joiner) {
+        synchronized (stream) {
+            if (!stream.isClosed()) {
+                joiner.accept(stream);
+                return CompletableFuture.completedFuture(stream);
+            }
+        }
+        // 等待期间流已被拆除（最后一个观看者恰好离开），重新加入
+        return attach(stream.getUdid(), joiner);
+    }
+
+    /**
+     * 会话离开；最后一个观看者离开时关闭上行并清理 adb forward。
+     */
+    public void detach(String udid, ViewerSink sink) {
+        DeviceStream stream = streams.get(udid);
+        if (stream == null) {
+            return;
+        }
+        synchronized (stream) {
+            if (stream.removeViewer(sink) && stream.isIdle()) {
+                release(stream);
+            }
+        }
+    }
+
+    /**
+     * 摘除旁路消费者；没有观看者时同样释放上行。
+     */
+    public void detachTap(String udid, StreamTap tap) {
+        DeviceStream stream = streams.get(udid);
+        if (stream == null) {
+            return;
+        }
+        synchronized (stream) {
+            if (stream.removeTap(tap) && stream.isIdle()) {
+                release(stream);
+            }
+        }
+    }
+
+    /**
+     * 所有共享流及其观看会话的统计快照。
+     */
+    public List<StreamStats> stats() {
+        return streams.values().stream()
+            .filter(stream -> !stream.isClosed())
+            .map(DeviceStream::stats)
+            .toList();
+    }
+
+    /**
+     * 当前已连接的共享流（供自适应码率等后台任务遍历）。
+     */
+    List<DeviceStream> activeStreams() {
+        return streams.values().stream()
+            .filter(stream -> !stream.isClosed() && stream.isConnected())
+            .toList();
+    }
+
+    private DeviceStream newStream(String udid) {
+        AppProperties.Stream config = properties.getStream();
+        return new DeviceStream(
+            udid,
+            bufferPool,
+            config.getSessionQueueCapacity(),
+            config.getGopCacheMaxMb() * 1024L * 1024L,
+            config.isControlCoalescing(),
+            config.getScrollCoalesceWindowMs(),
+            config.getPreviewIntervalMs()
+        );
+    }
+
+    /**
+     * 建立上行：启动 server 与建立 forward 是阻塞的 adb 操作，放在虚拟线程上执行；
+     * WebSocket 握手与就绪探测完全异步。各阶段耗时记入流统计。
+     */
+    private CompletableFuture<Void> open(DeviceStream stream) {
+        String udid = stream.getUdid();
+        long startedAt = System.nanoTime();
+        // 先登记使用，空闲回收不会在打开过程中停止 server
+        if (stream.holdServerLease()) {
+            scrcpyService.serverAcquired(udid);
+        }
+        CompletableFuture<Prepared> prepared = CompletableFuture.supplyAsync(() -> prepare(udid), setupExecutor);
+        return prepared
+            .thenCompose(ready -> stream.connect(transport, ready.localPort(), connectTimeout, () -> onUpstreamClosed(stream))
+                .thenAccept(attempts -> {
+                    StreamSetup setup = new StreamSetup(
+                        toMillis(ready.serverNanos()),
+                        toMillis(ready.forwardNanos()),
+                        toMillis(System.nanoTime() - ready.finishedAt()),
+                        attempts,
+                        toMillis(System.nanoTime() - startedAt)
+                    );
+                    stream.setSetup(setup);
+                    log.info("Stream opened: udid={} localPort={} setup={}", udid, ready.localPort(), setup);
+                }))
+            .whenComplete((ignored, error) -> {
+                if (error != null) {
+                    abandon(stream, error);
+                }
+            });
+    }
+
+    private Prepared prepare(String udid) {
+        try {
+            long startedAt = System.nanoTime();
+            // 预热过的设备已确认 server 在运行，直接复用 forward，只需 WebSocket 握手
+            if (!scrcpyService.isRunning(udid)) {
+                scrcpyService.ensureServerRunning(udid);
+            }
+            long serverDone = System.nanoTime();
+            int localPort = scrcpyService.openForward(udid);
+            long forwardDone = System.nanoTime();
+            return new Prepared(localPort, serverDone - startedAt, forwardDone - serverDone, forwardDone);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(ex);
+        } catch (Exception ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    private void abandon(DeviceStream stream, Throwable error) {
+        String udid = stream.getUdid();
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        log.warn("Stream open failed: udid={} error={}", udid, cause.getMessage());
+        // 可能是缓存的运行状态已过期，下次重新探测
+        scrcpyService.markStopped(udid);
+        synchronized (stream) {
+            stream.close();
+            // 先归还租约再移出 map：之后加入的新流登记的租约不会被这里抵消
+            releaseServerLease(stream);
+            streams.remove(udid, stream);
+        }
+        if (stream.getLocalPort() > 0) {
+            scrcpyService.closeForward(udid);
+        }
+    }
+
+    private void onUpstreamClosed(DeviceStream stream) {
+        // 上行异常断开，server 可能已退出
+        scrcpyService.markStopped(stream.getUdid());
+        synchronized (stream) {
+            if (!stream.isClosed()) {
+                release(stream);
+            }
+        }
+    }
+
+    private void release(DeviceStream stream) {
+        stream.close();
+        releaseServerLease(stream);
+        streams.remove(stream.getUdid(), stream);
+        if (stream.getLocalPort() > 0) {
+            scrcpyService.closeForward(stream.getUdid());
+        }
+        log.info("Stream released: udid={}", stream.getUdid());
+    }
+
+    private void releaseServerLease(DeviceStream stream) {
+        if (stream.dropServerLease()) {
+            scrcpyService.serverReleased(stream.getUdid());
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private record Prepared(int localPort, long serverNanos, long forwardNanos, long finishedAt) {
+    }
+}
@@ -0,0 +1,332 @@
+package com.controlphonedesk.stream;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * H.264 Annex B -> fMP4（ISO BMFF 分片）的增量封装，供 MSE 客户端直接 appendBuffer。
+ * 参数集生成初始化段（ftyp + moov），每个画面帧生成一个单样本媒体段（moof + mdat）。
+ * 解码时间取帧到达时间（90kHz，从启用封装时的第一帧算起），时长按上一个到达间隔估算。
+ * 媒体段直接写入池化缓冲区，NAL 数据只拷贝一次（起始码改写为 4 字节长度）。
+ * 非线程安全，由 {@link DeviceStream} 在扇出锁内调用。
+ */
+final class Fmp4Remuxer {
+    static final int TIMESCALE = 90000;
+    private static final int TRACK_ID = 1;
+    private static final long DEFAULT_DURATION = TIMESCALE / 60;
+    private static final long MAX_DURATION = TIMESCALE / 10;
+    // moof(8) + mfhd(16) + traf(8) + tfhd(16) + tfdt(20) + trun(32)
+    private static final int MOOF_SIZE = 100;
+    private static final int MDAT_HEADER = 8;
+    private static final int NAL_AUD = 9;
+    private static final int FLAGS_SYNC = 0x02000000;
+    private static final int FLAGS_NON_SYNC = 0x01010000;
+    private static final int MOOF = type("moof");
+    private static final int MFHD = type("mfhd");
+    private static final int TRAF = type("traf");
+    private static final int TFHD = type("tfhd");
+    private static final int TFDT = type("tfdt");
+    private static final int TRUN = type("trun");
+    private static final int MDAT = type("mdat");
+
+    private final BufferPool bufferPool;
+    // 当前帧各 NAL 的 [起始, 结束) 下标（不含起始码），按需扩容后复用
+    private int[] nals = new int[32];
+    private int nalCount;
+    private byte[] sps;
+    private byte[] pps;
+    private ByteBuffer initSegment;
+    private long origin = -1;
+    private long lastReceivedAt = -1;
+    private long lastDuration = DEFAULT_DURATION;
+    private int sequence;
+
+    Fmp4Remuxer(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * 封装一帧，返回新帧（调用方负责 release），无需输出时返回 null。
+     * scrcpy_initial 与设备消息原样透传；参数集帧输出初始化段；
+     * 画面帧输出媒体段，帧内自带新参数集时在媒体段前拼接新的初始化段。
+     */
+    StreamFrame remux(StreamFrame frame) {
+        FrameKind kind = frame.kind();
+        if (kind == FrameKind.INITIAL || kind == FrameKind.DEVICE_MESSAGE) {
+            return frame.retain();
+        }
+        ByteBuffer data = frame.payload();
+        scan(data);
+        boolean changed = captureParameterSets(data);
+        if (kind == FrameKind.CONFIG) {
+            if (initSegment == null) {
+                return null;
+            }
+            return StreamFrame.of(initSegment.duplicate(), FrameKind.CONFIG, bufferPool);
+        }
+        if (initSegment == null) {
+            // 尚未收到参数集，无法生成可解码的媒体段
+            return null;
+        }
+        int sampleBytes = 0;
+        for (int i = 0; i < nalCount; i++) {
+            if (isSampleNal(data, i)) {
+                sampleBytes += 4 + nalLength(i);
+            }
+        }
+        if (sampleBytes == 0) {
+            return null;
+        }
+        ByteBuffer init = changed ? initSegment.duplicate() : null;
+        int initBytes = init != null ? init.remaining() : 0;
+        ByteBuffer out = bufferPool.acquire(initBytes + MOOF_SIZE + MDAT_HEADER + sampleBytes);
+        if (init != null) {
+            out.put(init);
+        }
+        writeMoof(out, frame, sampleBytes);
+        out.putInt(MDAT_HEADER + sampleBytes).putInt(MDAT);
+        for (int i = 0; i < nalCount; i++) {
+            if (!isSampleNal(data, i)) {
+                continue;
+            }
+            int length = nalLength(i);
+            out.putInt(length);
+            out.put(out.position(), data, nals[i * 2], length);
+            out.position(out.position() + length);
+        }
+        out.flip();
+        return StreamFrame.of(out, kind, bufferPool);
+    }
+
+    private void writeMoof(ByteBuffer out, StreamFrame frame, int sampleBytes) {
+        long receivedAt = frame.receivedAt();
+        if (origin < 0) {
+            origin = receivedAt;
+        }
+        if (lastReceivedAt >= 0) {
+            long interval = toTicks(receivedAt - lastReceivedAt);
+            lastDuration = Math.max(1, Math.min(MAX_DURATION, interval));
+        }
+        lastReceivedAt = receivedAt;
+        int moof = begin(out, MOOF);
+        int mfhd = fullBox(out, MFHD, 0, 0);
+        out.putInt(++sequence);
+        end(out, mfhd);
+        int traf = begin(out, TRAF);
+        // default-base-is-moof：数据偏移相对 moof 起点
+        int tfhd = fullBox(out, TFHD, 0, 0x020000);
+        out.putInt(TRACK_ID);
+        end(out, tfhd);
+        int tfdt = fullBox(out, TFDT, 1, 0);
+        out.putLong(toTicks(receivedAt - origin));
+        end(out, tfdt);
+        // data-offset + sample-duration + sample-size + sample-flags
+        int trun = fullBox(out, TRUN, 0, 0x000701);
+        out.putInt(1);
+        out.putInt(MOOF_SIZE + MDAT_HEADER);
+        out.putInt((int) lastDuration);
+        out.putInt(sampleBytes);
+        out.putInt(frame.kind() == FrameKind.KEY ? FLAGS_SYNC : FLAGS_NON_SYNC);
+        end(out, trun);
+        end(out, traf);
+        end(out, moof);
+    }
+
+    /**
+     * 记录各 NAL 的位置：每个 NAL 到下一个起始码（或帧末尾）为止。
+     */
+    private void scan(ByteBuffer data) {
+        nalCount = 0;
+        int start = NalUnits.findNalStart(data, data.position());
+        while (start >= 0) {
+            int next = NalUnits.findNalStart(data, start + 1);
+            int end = next < 0 ? data.limit() : next - (data.get(next - 4) == 0 ? 4 : 3);
+            if (nalCount * 2 == nals.length) {
+                nals = Arrays.copyOf(nals, nals.length * 2);
+            }
+            nals[nalCount * 2] = start;
+            nals[nalCount * 2 + 1] = Math.max(start, end);
+            nalCount++;
+            start = next;
+        }
+    }
+
+    /**
+     * 更新 SPS/PPS，内容变化时重新生成初始化段并返回 true。
+     */
+    private boolean captureParameterSets(ByteBuffer data) {
+        boolean changed = false;
+        for (int i = 0; i < nalCount; i++) {
+            int type = NalUnits.nalType(data, nals[i * 2]);
+            if (type == NalUnits.TYPE_SPS && !sameNal(sps, data, i)) {
+                sps = copyNal(data, i);
+                changed = true;
+            } else if (type == NalUnits.TYPE_PPS && !sameNal(pps, data, i)) {
+                pps = copyNal(data, i);
+                changed = true;
+            }
+        }
+        if (changed && sps != null && pps != null) {
+            SpsInfo info = SpsInfo.parse(sps);
+            if (info != null) {
+                initSegment = buildInitSegment(info);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSampleNal(ByteBuffer data, int index) {
+        int type = NalUnits.nalType(data, nals[index * 2]);
+        return type != NalUnits.TYPE_SPS && type != NalUnits.TYPE_PPS && type != NAL_AUD && nalLength(index) > 0;
+    }
+
+    private int nalLength(int index) {
+        return nals[index * 2 + 1] - nals[index * 2];
+    }
+
+    private boolean sameNal(byte[] existing, ByteBuffer data, int index) {
+        if (existing == null || existing.length != nalLength(index)) {
+            return false;
+        }
+        int start = nals[index * 2];
+        for (int i = 0; i < existing.length; i++) {
+            if (existing[i] != data.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] copyNal(ByteBuffer data, int index) {
+        byte[] nal = new byte[nalLength(index)];
+        data.get(nals[index * 2], nal);
+        return nal;
+    }
+
+    /**
+     * 初始化段：ftyp + moov（单条视频轨，avcC 携带 SPS/PPS，mvex 声明分片）。很少生成，用堆内存。
+     */
+    private ByteBuffer buildInitSegment(SpsInfo info) {
+        ByteBuffer out = ByteBuffer.allocate(1024 + sps.length + pps.length);
+        int ftyp = begin(out, type("ftyp"));
+        out.putInt(type("isom")).putInt(0x200);
+        out.putInt(type("isom")).putInt(type("iso6")).putInt(type("avc1")).putInt(type("mp41"));
+        end(out, ftyp);
+
+        int moov = begin(out, type("moov"));
+        int mvhd = fullBox(out, type("mvhd"), 0, 0);
+        out.putInt(0).putInt(0).putInt(1000).putInt(0);
+        out.putInt(0x00010000).putShort((short) 0x0100).putShort((short) 0).putLong(0);
+        putMatrix(out);
+        out.put(new byte[24]);
+        out.putInt(TRACK_ID + 1);
+        end(out, mvhd);
+
+        int trak = begin(out, type("trak"));
+        // track_enabled | track_in_movie
+        int tkhd = fullBox(out, type("tkhd"), 0, 0x000003);
+        out.putInt(0).putInt(0).putInt(TRACK_ID).putInt(0).putInt(0);
+        out.putLong(0).putShort((short) 0).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        putMatrix(out);
+        out.putInt(info.width() << 16).putInt(info.height() << 16);
+        end(out, tkhd);
+
+        int mdia = begin(out, type("mdia"));
+        int mdhd = fullBox(out, type("mdhd"), 0, 0);
+        // 语言 und
+        out.putInt(0).putInt(0).putInt(TIMESCALE).putInt(0).putShort((short) 0x55c4).putShort((short) 0);
+        end(out, mdhd);
+        int hdlr = fullBox(out, type("hdlr"), 0, 0);
+        out.putInt(0).putInt(type("vide")).putInt(0).putInt(0).putInt(0);
+        out.put("VideoHandler\0".getBytes(StandardCharsets.US_ASCII));
+        end(out, hdlr);
+
+        int minf = begin(out, type("minf"));
+        int vmhd = fullBox(out, type("vmhd"), 0, 1);
+        out.putShort((short) 0).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        end(out, vmhd);
+        int dinf = begin(out, type("dinf"));
+        int dref = fullBox(out, type("dref"), 0, 0);
+        out.putInt(1);
+        // 数据在同一文件内
+        int url = fullBox(out, type("url "), 0, 1);
+        end(out, url);
+        end(out, dref);
+        end(out, dinf);
+
+        int stbl = begin(out, type("stbl"));
+        int stsd = fullBox(out, type("stsd"), 0, 0);
+        out.putInt(1);
+        int avc1 = begin(out, type("avc1"));
+        out.put(new byte[6]).putShort((short) 1);
+        out.putShort((short) 0).putShort((short) 0).putInt(0).putInt(0).putInt(0);
+        out.putShort((short) info.width()).putShort((short) info.height());
+        out.putInt(0x00480000).putInt(0x00480000).putInt(0).putShort((short) 1);
+        out.put(new byte[32]);
+        out.putShort((short) 0x0018).putShort((short) -1);
+        int avcC = begin(out, type("avcC"));
+        out.put((byte) 1).put((byte) info.profile()).put((byte) info.compatibility()).put((byte) info.level());
+        // 长度字段 4 字节；1 个 SPS、1 个 PPS
+        out.put((byte) 0xff).put((byte) 0xe1).putShort((short) sps.length).put(sps);
+        out.put((byte) 1).putShort((short) pps.length).put(pps);
+        end(out, avcC);
+        end(out, avc1);
+        end(out, stsd);
+        for (String empty : new String[] {"stts", "stsc", "stco"}) {
+            int box = fullBox(out, type(empty), 0, 0);
+            out.putInt(0);
+            end(out, box);
+        }
+        int stsz = fullBox(out, type("stsz"), 0, 0);
+        out.putInt(0).putInt(0);
+        end(out, stsz);
+        end(out, stbl);
+        end(out, minf);
+        end(out, mdia);
+        end(out, trak);
+
+        int mvex = begin(out, type("mvex"));
+        int trex = fullBox(out, type("trex"), 0, 0);
+        out.putInt(TRACK_ID).putInt(1).putInt(0).putInt(0).putInt(0);
+        end(out, trex);
+        end(out, mvex);
+        end(out, moov);
+        return out.flip().asReadOnlyBuffer();
+    }
+
+    private static void putMatrix(ByteBuffer out) {
+        out.putInt(0x00010000).putInt(0).putInt(0);
+        out.putInt(0).putInt(0x00010000).putInt(0);
+        out.putInt(0).putInt(0).putInt(0x40000000);
+    }
+
+    /**
+     * 写入盒子头（大小占位），返回起点，由 {@link #end} 回填大小。
+     */
+    private static int begin(ByteBuffer out, int type) {
+        int start = out.position();
+        out.putInt(0).putInt(type);
+        return start;
+    }
+
+    private static int fullBox(ByteBuffer out, int type, int version, int flags) {
+        int start = begin(out, type);
+        out.putInt((version << 24) | flags);
+        return start;
+    }
+
+    private static void end(ByteBuffer out, int start) {
+        out.putInt(start, out.position() - start);
+    }
+
+    private static int type(String type) {
+        byte[] bytes = type.getBytes(StandardCharsets.US_ASCII);
+        return (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+    }
+
+    private static long toTicks(long nanos) {
+        return nanos * 9 / 100_000;
+    }
+}
@@ -0,0 +1,24 @@
+package com.controlphonedesk.stream;
+
+/**
+ * 设备下行消息分类：决定拥塞时能否丢弃。
+ */
+public enum FrameKind {
+    /** scrcpy_initial：设备信息/编码器列表 */
+    INITIAL,
+    /** scrcpy_message：剪贴板、文件推送回执等设备消息 */
+    DEVICE_MESSAGE,
+    /** 只含 SPS/PPS 等参数集的帧 */
+    CONFIG,
+    /** 含 IDR 的关键帧 */
+    KEY,
+    /** 普通 P/B 帧 */
+    DELTA;
+
+    /**
+     * 是否为视频画面帧（拥塞时可丢弃，丢弃后需等待下一关键帧）。
+     */
+    public boolean isVideo() {
+        return this == KEY || this == DELTA;
+    }
+}
@@ -0,0 +1,147 @@
+package com.controlphonedesk.stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 每台设备缓存最近的 scrcpy_initial、参数集（SPS/PPS）以及当前 GOP（最近一个 IDR 及其后的帧），
+ * 新加入的观看者先收到这些帧即可立即解码，无需重启设备端 server。
+ * GOP 超过字节上限时只保留 IDR，新观看者随后等待下一个关键帧。
+ * 非线程安全，由 {@link DeviceStream} 在扇出锁内调用。
+ */
+class GopCache {
+    private final long maxBytes;
+    private StreamFrame initial;
+    private StreamFrame config;
+    private final List<StreamFrame> gop = new ArrayList<>();
+    private long gopBytes;
+    private boolean truncated;
+
+    GopCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 根据帧类型更新缓存（需要缓存时自行 retain）。
+     */
+    void update(StreamFrame frame) {
+        switch (frame.kind()) {
+            case INITIAL -> {
+                release(initial);
+                initial = frame.retain();
+            }
+            case CONFIG -> {
+                // 新参数集意味着编码器重启，旧 GOP 不再可解码
+                release(config);
+                config = frame.retain();
+                clearGop();
+            }
+            case KEY -> {
+                clearGop();
+                append(frame);
+            }
+            case DELTA -> {
+                if (gop.isEmpty() || truncated) {
+                    return;
+                }
+                if (gopBytes + frame.size() > maxBytes) {
+                    truncated = true;
+                    return;
+                }
+                append(frame);
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * 将缓存帧按顺序补发给新观看者；预览观看者只补发 GOP 中的关键帧。
+     */
+    void replayTo(ViewerSession viewer) {
+        if (initial != null) {
+            viewer.offerPinned(initial.retain());
+        }
+        if (config != null) {
+            viewer.offerPinned(config.retain());
+        }
+        if (gop.isEmpty()) {
+            return;
+        }
+        if (truncated || viewer.isPreview()) {
+            viewer.offerPinned(gop.get(0).retain());
+            viewer.awaitKeyFrame();
+            return;
+        }
+        for (StreamFrame frame : gop) {
+            viewer.offerPinned(frame.retain());
+        }
+    }
+
+    /**
+     * 按补发顺序遍历缓存帧（不转移引用），用于从原始帧派生另一种格式的缓存。
+     */
+    void forEachCached(Consumer<StreamFrame> action) {
+        if (initial != null) {
+            action.accept(initial);
+        }
+        if (config != null) {
+            action.accept(config);
+        }
+        gop.forEach(action);
+    }
+
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * 标记当前 GOP 不完整：派生缓存的来源已截断时使用，补发后等待下一个关键帧。
+     */
+    void markTruncated() {
+        if (!gop.isEmpty()) {
+            truncated = true;
+        }
+    }
+
+    boolean hasKeyFrame() {
+        return !gop.isEmpty();
+    }
+
+    int gopFrames() {
+        return gop.size();
+    }
+
+    long gopBytes() {
+        return gopBytes;
+    }
+
+    void clear() {
+        release(initial);
+        initial = null;
+        release(config);
+        config = null;
+        clearGop();
+    }
+
+    private void append(StreamFrame frame) {
+        gop.add(frame.retain());
+        gopBytes += frame.size();
+    }
+
+    private void clearGop() {
+        for (StreamFrame frame : gop) {
+            frame.release();
+        }
+        gop.clear();
+        gopBytes = 0;
+        truncated = false;
+    }
+
+    private static void release(StreamFrame frame) {
+        if (frame != null) {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.controlphonedesk.stream;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 基于 JDK {@link HttpClient} WebSocket 的上行：分片直接写入池化缓冲区，组装完成后交给 receiver。
+ * HttpClient 在返回的 CompletionStage 完成后会复用 data，因此每帧仍需拷贝一次，但不再经过中间数组。
+ */
+public class HttpClientTransport implements UpstreamTransport {
+    private final HttpClient httpClient;
+    private final BufferPool bufferPool;
+
+    public HttpClientTransport(HttpClient httpClient, BufferPool bufferPool) {
+        this.httpClient = httpClient;
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public String name() {
+        return "http-client";
+    }
+
+    @Override
+    public CompletableFuture<Connection> connect(int localPort, Duration timeout, Receiver receiver) {
+        return httpClient.newWebSocketBuilder()
+            .connectTimeout(timeout)
+            .buildAsync(URI.create("ws://127.0.0.1:" + localPort + "/"), new Listener(receiver))
+            .thenApply(HttpClientConnection::new);
+    }
+
+    private record HttpClientConnection(WebSocket webSocket) implements Connection {
+        @Override
+        public CompletableFuture<?> sendBinary(ByteBuffer payload) {
+            return webSocket.sendBinary(payload, true);
+        }
+
+        @Override
+        public CompletableFuture<?> sendText(String text) {
+            return webSocket.sendText(text, true);
+        }
+
+        @Override
+        public void abort() {
+            webSocket.abort();
+        }
+    }
+
+    private class Listener implements WebSocket.Listener {
+        private final Receiver receiver;
+        // 处理 WebSocket 分片：remote 可能把一条消息拆成多段发送
+        private ByteBuffer assembling;
+        private final StringBuilder textBuffer = new StringBuilder();
+
+        private Listener(Receiver receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            if (assembling == null) {
+                // 首个分片按 2 倍预留，多数分片消息可一次容纳
+                assembling = bufferPool.acquire(last ? data.remaining() : data.remaining() * 2);
+            } else {
+                assembling = bufferPool.grow(assembling, data.remaining());
+            }
+            assembling.put(data);
+            if (last) {
+                ByteBuffer merged = assembling;
+                assembling = null;
+                merged.flip();
+                receiver.onBinary(merged);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            textBuffer.append(data);
+            if (last) {
+                String merged = textBuffer.toString();
+                textBuffer.setLength(0);
+                receiver.onText(merged);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            releaseAssembling();
+            receiver.onClosed();
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            releaseAssembling();
+            receiver.onClosed();
+        }
+
+        private void releaseAssembling() {
+            if (assembling != null) {
+                bufferPool.release(assembling);
+                assembling = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.controlphonedesk.stream;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 延迟统计：最近一次、指数滑动平均与最大值。记录方需保证单线程（或已串行化）调用 {@link #record}。
+ */
+final class LatencyTracker {
+    private final AtomicLong count = new AtomicLong();
+    private volatile long lastNanos;
+    private volatile long maxNanos;
+    private volatile double avgNanos;
+
+    void record(long nanos) {
+        count.incrementAndGet();
+        lastNanos = nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+        double avg = avgNanos;
+        avgNanos = avg == 0 ? nanos : avg * 0.9 + nanos * 0.1;
+    }
+
+    long count() {
+        return count.get();
+    }
+
+    double lastMs() {
+        return toMillis(lastNanos);
+    }
+
+    double avgMs() {
+        return toMillis((long) avgNanos);
+    }
+
+    double maxMs() {
+        return toMillis(maxNanos);
+    }
+
+    static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,88 @@
+package com.controlphonedesk.stream;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * H.264 Annex B 码流的最小解析：定位起始码、识别 NAL 类型，用于帧分类。
+ * 只读取 NAL 头，不解码片数据。
+ */
+public final class NalUnits {
+    public static final int TYPE_NON_IDR = 1;
+    public static final int TYPE_IDR = 5;
+    public static final int TYPE_SEI = 6;
+    public static final int TYPE_SPS = 7;
+    public static final int TYPE_PPS = 8;
+
+    private static final byte[] MAGIC_INITIAL = "scrcpy_initial".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MAGIC_MESSAGE = "scrcpy_message".getBytes(StandardCharsets.UTF_8);
+
+    private NalUnits() {
+    }
+
+    /**
+     * 从 from 开始查找起始码（00 00 01 / 00 00 00 01），返回起始码后 NAL 头的下标，找不到返回 -1。
+     */
+    public static int findNalStart(ByteBuffer data, int from) {
+        int limit = data.limit() - 3;
+        for (int i = Math.max(from, data.position()); i < limit; i++) {
+            if (data.get(i) != 0 || data.get(i + 1) != 0) {
+                continue;
+            }
+            byte third = data.get(i + 2);
+            if (third == 1) {
+                return i + 3;
+            }
+            if (third == 0 && data.get(i + 3) == 1) {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    public static int nalType(ByteBuffer data, int headerIndex) {
+        return data.get(headerIndex) & 0x1f;
+    }
+
+    /**
+     * 对一条设备消息分类。遇到第一个片（IDR/非 IDR）即停止扫描，参数集总在片之前，
+     * 因此大帧只需扫描开头几个字节。
+     */
+    public static FrameKind classify(ByteBuffer data) {
+        if (startsWith(data, MAGIC_INITIAL)) {
+            return FrameKind.INITIAL;
+        }
+        if (startsWith(data, MAGIC_MESSAGE)) {
+            return FrameKind.DEVICE_MESSAGE;
+        }
+        boolean config = false;
+        int index = findNalStart(data, data.position());
+        while (index >= 0 && index < data.limit()) {
+            int type = nalType(data, index);
+            if (type == TYPE_IDR) {
+                return FrameKind.KEY;
+            }
+            if (type == TYPE_NON_IDR) {
+                return FrameKind.DELTA;
+            }
+            if (type == TYPE_SPS || type == TYPE_PPS) {
+                config = true;
+            }
+            index = findNalStart(data, index + 1);
+        }
+        return config ? FrameKind.CONFIG : FrameKind.DELTA;
+    }
+
+    public static boolean startsWith(ByteBuffer data, byte[] magic) {
+        if (data.remaining() < magic.length) {
+            return false;
+        }
+        int base = data.position();
+        for (int i = 0; i < magic.length; i++) {
+            if (data.get(base + i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
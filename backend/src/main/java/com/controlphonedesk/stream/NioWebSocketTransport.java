@@ -0,0 +1,456 @@
+package com.controlphonedesk.stream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 直接基于阻塞 {@link SocketChannel} 的上行（每条连接一个读取虚拟线程和一个写出虚拟线程），省去 HttpClient 的 WebSocket 层：
+ * 帧头在复用的读缓冲区内解析，二进制载荷按长度一次性取得池化缓冲区后直接从通道读入；
+ * 发送只是入队，由写出线程把帧头与载荷用 gather write 一次写出（载荷原地加掩码）后完成返回的 future，
+ * 设备不读取时阻塞的只有写出线程，调用方（如 Servlet 线程）不会被卡住。
+ */
+public class NioWebSocketTransport implements UpstreamTransport {
+    private static final Logger log = LoggerFactory.getLogger(NioWebSocketTransport.class);
+    private static final String HOST = "127.0.0.1";
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_HANDSHAKE_BYTES = 8 * 1024;
+    private static final long MAX_MESSAGE_BYTES = 64L * 1024 * 1024;
+    private static final long CLOSE_REPLY_TIMEOUT_MS = 1000;
+
+    private final BufferPool bufferPool;
+
+    public NioWebSocketTransport(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public String name() {
+        return "nio";
+    }
+
+    /**
+     * 在虚拟线程上连接并握手；成功后同一线程继续作为该连接的读取线程。
+     * 超时由延迟任务关闭通道实现，阻塞中的连接或读取随之返回。
+     */
+    @Override
+    public CompletableFuture<Connection> connect(int localPort, Duration timeout, Receiver receiver) {
+        CompletableFuture<Connection> result = new CompletableFuture<>();
+        Thread.ofVirtual().name("upstream-nio-" + localPort).start(() -> {
+            SocketChannel channel;
+            try {
+                channel = SocketChannel.open();
+            } catch (IOException ex) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+                if (result.completeExceptionally(new IOException("Upstream connect timeout: port " + localPort))) {
+                    closeQuietly(channel);
+                }
+            });
+            NioConnection connection;
+            try {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.socket().connect(new InetSocketAddress(HOST, localPort),
+                    (int) Math.max(1, Math.min(Integer.MAX_VALUE, timeout.toMillis())));
+                connection = new NioConnection(channel, receiver);
+                connection.handshake(HOST + ":" + localPort);
+            } catch (IOException | RuntimeException ex) {
+                closeQuietly(channel);
+                result.completeExceptionally(ex);
+                return;
+            }
+            if (!result.complete(connection)) {
+                // 握手完成时已超时
+                closeQuietly(channel);
+                return;
+            }
+            Thread.ofVirtual().name("upstream-nio-writer-" + localPort).start(connection::writeLoop);
+            connection.readLoop();
+        });
+        return result;
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private class NioConnection implements Connection {
+        private final SocketChannel channel;
+        private final Receiver receiver;
+        // 读缓冲区始终处于读模式（已 flip）
+        private final ByteBuffer in = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+        // 待写出的帧，由锁保护：发送方与读取线程（回复 pong/close）入队，写出线程取出
+        private final ArrayDeque<PendingWrite> writes = new ArrayDeque<>();
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private final Condition writable = writeLock.newCondition();
+        private boolean writerClosed;
+        // 以下只由写出线程访问
+        private final ByteBuffer header = ByteBuffer.allocate(WebSocketCodec.MAX_HEADER_BYTES);
+        private final ByteBuffer[] gather = new ByteBuffer[2];
+        private volatile boolean aborted;
+        // 分片消息的组装状态，只由读取线程访问
+        private ByteBuffer assembling;
+        private ByteBuffer textAssembling;
+        private int fragmentOpcode = -1;
+
+        private NioConnection(SocketChannel channel, Receiver receiver) {
+            this.channel = channel;
+            this.receiver = receiver;
+            in.flip();
+        }
+
+        @Override
+        public CompletableFuture<?> sendBinary(ByteBuffer payload) {
+            return send(WebSocketCodec.OP_BINARY, payload);
+        }
+
+        @Override
+        public CompletableFuture<?> sendText(String text) {
+            return send(WebSocketCodec.OP_TEXT, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public void abort() {
+            aborted = true;
+            closeWriter();
+            closeQuietly(channel);
+        }
+
+        /**
+         * 发送一帧：入队后立即返回，写出线程写完后完成 future。
+         * 掩码原地作用于 payload，发送完成后其内容不再有效。
+         */
+        private CompletableFuture<?> send(int opcode, ByteBuffer payload) {
+            PendingWrite write = new PendingWrite(opcode, payload, new CompletableFuture<>());
+            writeLock.lock();
+            try {
+                if (writerClosed) {
+                    return CompletableFuture.failedFuture(new IOException("Upstream closed"));
+                }
+                writes.addLast(write);
+                writable.signal();
+            } finally {
+                writeLock.unlock();
+            }
+            return write.done();
+        }
+
+        /**
+         * 写出线程：逐帧写出，写失败时关闭通道（读取线程随之结束并回调 onClosed）。
+         */
+        private void writeLoop() {
+            try {
+                while (true) {
+                    PendingWrite write;
+                    writeLock.lock();
+                    try {
+                        while (writes.isEmpty() && !writerClosed) {
+                            writable.await();
+                        }
+                        write = writes.pollFirst();
+                    } finally {
+                        writeLock.unlock();
+                    }
+                    if (write == null) {
+                        return;
+                    }
+                    try {
+                        writeFrame(write.opcode(), write.payload());
+                    } catch (IOException ex) {
+                        write.done().completeExceptionally(ex);
+                        if (!aborted) {
+                            log.debug("Upstream write failed: {}", ex.toString());
+                        }
+                        closeQuietly(channel);
+                        return;
+                    }
+                    write.done().complete(null);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closeWriter();
+            }
+        }
+
+        private void writeFrame(int opcode, ByteBuffer payload) throws IOException {
+            int mask = WebSocketCodec.writeHeader(header, opcode, payload.remaining());
+            WebSocketCodec.mask(payload, mask);
+            gather[0] = header;
+            gather[1] = payload;
+            try {
+                while (payload.hasRemaining() || header.hasRemaining()) {
+                    channel.write(gather);
+                }
+            } finally {
+                gather[1] = null;
+            }
+        }
+
+        /**
+         * 不再接受新的发送，唤醒写出线程，未写出的帧以异常完成。
+         */
+        private void closeWriter() {
+            ArrayDeque<PendingWrite> pending;
+            writeLock.lock();
+            try {
+                writerClosed = true;
+                pending = new ArrayDeque<>(writes);
+                writes.clear();
+                writable.signalAll();
+            } finally {
+                writeLock.unlock();
+            }
+            IOException closed = new IOException("Upstream closed");
+            pending.forEach(write -> write.done().completeExceptionally(closed));
+        }
+
+        /**
+         * 发送握手请求并校验 101 应答；应答头之后已读到的字节留在读缓冲区，交给帧解析。
+         */
+        private void handshake(String hostPort) throws IOException {
+            String key = WebSocketCodec.newKey();
+            ByteBuffer request = ByteBuffer.wrap(
+                WebSocketCodec.handshakeRequest(hostPort, key).getBytes(StandardCharsets.US_ASCII));
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+            int headerEnd;
+            while ((headerEnd = indexOfHeaderEnd()) < 0) {
+                if (in.remaining() >= MAX_HANDSHAKE_BYTES) {
+                    throw new IOException("Upstream handshake response too large");
+                }
+                readMore();
+            }
+            byte[] raw = new byte[headerEnd];
+            in.get(raw);
+            String[] lines = new String(raw, StandardCharsets.US_ASCII).split("\r\n");
+            if (lines.length == 0 || !lines[0].matches("HTTP/1\\.1 101( .*)?")) {
+                throw new IOException("Upstream handshake rejected: " + (lines.length > 0 ? lines[0] : ""));
+            }
+            String expected = WebSocketCodec.expectedAccept(key);
+            boolean accepted = false;
+            for (String line : lines) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Accept")) {
+                    accepted = expected.equals(line.substring(colon + 1).trim());
+                }
+            }
+            if (!accepted) {
+                throw new IOException("Bad Sec-WebSocket-Accept from upstream");
+            }
+        }
+
+        /**
+         * 返回应答头结束位置（含 \r\n\r\n），未读全时返回 -1。
+         */
+        private int indexOfHeaderEnd() {
+            for (int i = in.position(); i + 3 < in.limit(); i++) {
+                if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                    return i + 4 - in.position();
+                }
+            }
+            return -1;
+        }
+
+        private void readLoop() {
+            try {
+                while (readFrame()) {
+                    // 逐帧处理直到收到 close
+                }
+            } catch (IOException ex) {
+                if (!aborted) {
+                    log.debug("Upstream read ended: {}", ex.toString());
+                }
+            } catch (RuntimeException ex) {
+                log.warn("Upstream frame handling failed", ex);
+            } finally {
+                release();
+                closeWriter();
+                closeQuietly(channel);
+                if (!aborted) {
+                    receiver.onClosed();
+                }
+            }
+        }
+
+        /**
+         * 读取并处理一帧，收到 close 时返回 false。
+         */
+        private boolean readFrame() throws IOException {
+            require(2);
+            int b0 = in.get() & 0xFF;
+            int b1 = in.get() & 0xFF;
+            boolean fin = (b0 & 0x80) != 0;
+            int opcode = b0 & 0x0F;
+            boolean masked = (b1 & 0x80) != 0;
+            long length = b1 & 0x7F;
+            if (length == 126) {
+                require(2);
+                length = in.getShort() & 0xFFFF;
+            } else if (length == 127) {
+                require(8);
+                length = in.getLong();
+            }
+            if (length < 0 || length > MAX_MESSAGE_BYTES) {
+                throw new IOException("Upstream frame too large: " + length);
+            }
+            int mask = 0;
+            if (masked) {
+                // 服务端帧按协议不应加掩码，这里兼容处理
+                require(4);
+                mask = in.getInt();
+            }
+            int size = (int) length;
+            switch (opcode) {
+                case WebSocketCodec.OP_BINARY, WebSocketCodec.OP_TEXT -> {
+                    fragmentOpcode = opcode;
+                    readData(opcode, size, fin, masked, mask);
+                }
+                case WebSocketCodec.OP_CONTINUATION -> {
+                    if (fragmentOpcode < 0) {
+                        throw new IOException("Unexpected continuation frame");
+                    }
+                    readData(fragmentOpcode, size, fin, masked, mask);
+                }
+                case WebSocketCodec.OP_PING -> {
+                    ByteBuffer payload = readControl(size, masked, mask);
+                    send(WebSocketCodec.OP_PONG, payload);
+                }
+                case WebSocketCodec.OP_PONG -> readControl(size, masked, mask);
+                case WebSocketCodec.OP_CLOSE -> {
+                    ByteBuffer payload = readControl(size, masked, mask);
+                    // 回送同样的状态码完成关闭握手，等它写出（有上限）后再关闭通道
+                    awaitQuietly(send(WebSocketCodec.OP_CLOSE, payload));
+                    return false;
+                }
+                default -> throw new IOException("Unknown upstream opcode: " + opcode);
+            }
+            return true;
+        }
+
+        private void readData(int opcode, int size, boolean fin, boolean masked, int mask) throws IOException {
+            if (opcode == WebSocketCodec.OP_BINARY) {
+                assembling = assembling == null ? bufferPool.acquire(size) : bufferPool.grow(assembling, size);
+                readPayload(assembling, size, masked, mask);
+                if (fin) {
+                    ByteBuffer message = assembling;
+                    assembling = null;
+                    fragmentOpcode = -1;
+                    message.flip();
+                    receiver.onBinary(message);
+                }
+                return;
+            }
+            if (textAssembling == null) {
+                textAssembling = ByteBuffer.allocate(Math.max(size, 256));
+            } else if (textAssembling.remaining() < size) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(textAssembling.position() + size, textAssembling.capacity() * 2));
+                textAssembling.flip();
+                textAssembling = larger.put(textAssembling);
+            }
+            readPayload(textAssembling, size, masked, mask);
+            if (fin) {
+                textAssembling.flip();
+                String text = StandardCharsets.UTF_8.decode(textAssembling).toString();
+                textAssembling = null;
+                fragmentOpcode = -1;
+                receiver.onText(text);
+            }
+        }
+
+        private void awaitQuietly(CompletableFuture<?> future) {
+            try {
+                future.get(CLOSE_REPLY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException ignored) {
+                // 关闭应答未能写出不影响关闭
+            }
+        }
+
+        private ByteBuffer readControl(int size, boolean masked, int mask) throws IOException {
+            if (size > 125) {
+                throw new IOException("Upstream control frame too large: " + size);
+            }
+            ByteBuffer payload = ByteBuffer.allocate(size);
+            readPayload(payload, size, masked, mask);
+            payload.flip();
+            return payload;
+        }
+
+        /**
+         * 读取 size 字节载荷到 target 的当前位置：先取读缓冲区中已有的部分，其余直接从通道读入 target。
+         */
+        private void readPayload(ByteBuffer target, int size, boolean masked, int mask) throws IOException {
+            int start = target.position();
+            int buffered = Math.min(size, in.remaining());
+            if (buffered > 0) {
+                ByteBuffer slice = in.slice(in.position(), buffered);
+                target.put(slice);
+                in.position(in.position() + buffered);
+            }
+            int limit = target.limit();
+            target.limit(start + size);
+            try {
+                while (target.hasRemaining()) {
+                    if (channel.read(target) < 0) {
+                        throw new EOFException("Upstream closed mid-frame");
+                    }
+                }
+            } finally {
+                target.limit(limit);
+            }
+            if (masked) {
+                WebSocketCodec.mask(target.duplicate().limit(start + size).position(start), mask);
+            }
+        }
+
+        private void require(int bytes) throws IOException {
+            while (in.remaining() < bytes) {
+                readMore();
+            }
+        }
+
+        private void readMore() throws IOException {
+            in.compact();
+            int read;
+            try {
+                read = channel.read(in);
+            } finally {
+                in.flip();
+            }
+            if (read < 0) {
+                throw new EOFException("Upstream closed");
+            }
+        }
+
+        private void release() {
+            if (assembling != null) {
+                bufferPool.release(assembling);
+                assembling = null;
+            }
+        }
+    }
+
+    private record PendingWrite(int opcode, ByteBuffer payload, CompletableFuture<Void> done) {}
+}
@@ -0,0 +1,46 @@
+package com.controlphonedesk.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * 一个浏览器 WebSocket 会话即一个观看者（/ws/scrcpy）。
+ */
+record SessionViewerSink(WebSocketSession session, boolean preview, StreamFormat format) implements ViewerSink {
+    @Override
+    public String id() {
+        return session.getId();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return session.isOpen();
+    }
+
+    @Override
+    public void sendBinary(ByteBuffer payload) throws IOException {
+        session.sendMessage(new BinaryMessage(payload));
+    }
+
+    @Override
+    public void sendText(String text) throws IOException {
+        session.sendMessage(new TextMessage(text));
+    }
+
+    /**
+     * 安全关闭浏览器会话，避免重复关闭导致异常。
+     */
+    @Override
+    public void close(CloseStatus status) {
+        try {
+            if (session.isOpen()) {
+                session.close(status);
+            }
+        } catch (Exception ignored) {
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.controlphonedesk.stream;
+
+import java.util.Arrays;
+
+/**
+ * 从 H.264 SPS 解析出的编码档次与显示尺寸（已扣除裁剪区域），用于生成 fMP4 初始化段。
+ */
+record SpsInfo(int profile, int compatibility, int level, int width, int height) {
+    /**
+     * 解析 SPS NAL（含 1 字节 NAL 头，不含起始码）；格式异常时返回 null。
+     */
+    static SpsInfo parse(byte[] nal) {
+        if (nal.length < 4) {
+            return null;
+        }
+        try {
+            BitReader reader = new BitReader(unescape(nal));
+            reader.skip(8);
+            int profile = reader.bits(8);
+            int compatibility = reader.bits(8);
+            int level = reader.bits(8);
+            reader.ue();
+            int chromaFormat = 1;
+            if (profile == 100 || profile == 110 || profile == 122 || profile == 244 || profile == 44
+                || profile == 83 || profile == 86 || profile == 118 || profile == 128 || profile == 138
+                || profile == 139 || profile == 134 || profile == 135) {
+                chromaFormat = reader.ue();
+                if (chromaFormat == 3) {
+                    reader.skip(1);
+                }
+                reader.ue();
+                reader.ue();
+                reader.skip(1);
+                if (reader.bits(1) == 1) {
+                    skipScalingLists(reader, chromaFormat == 3 ? 12 : 8);
+                }
+            }
+            reader.ue();
+            int pocType = reader.ue();
+            if (pocType == 0) {
+                reader.ue();
+            } else if (pocType == 1) {
+                reader.skip(1);
+                reader.se();
+                reader.se();
+                int cycle = reader.ue();
+                for (int i = 0; i < cycle; i++) {
+                    reader.se();
+                }
+            }
+            reader.ue();
+            reader.skip(1);
+            int widthInMbs = reader.ue() + 1;
+            int heightInMapUnits = reader.ue() + 1;
+            int frameMbsOnly = reader.bits(1);
+            if (frameMbsOnly == 0) {
+                reader.skip(1);
+            }
+            reader.skip(1);
+            int cropLeft = 0;
+            int cropRight = 0;
+            int cropTop = 0;
+            int cropBottom = 0;
+            if (reader.bits(1) == 1) {
+                cropLeft = reader.ue();
+                cropRight = reader.ue();
+                cropTop = reader.ue();
+                cropBottom = reader.ue();
+            }
+            // 裁剪单位：4:2:0 水平与垂直各 2，4:2:2 只有水平 2，4:4:4 与单色为 1；场编码时垂直再乘 2
+            int cropUnitX = chromaFormat == 1 || chromaFormat == 2 ? 2 : 1;
+            int cropUnitY = (chromaFormat == 1 ? 2 : 1) * (2 - frameMbsOnly);
+            int width = widthInMbs * 16 - (cropLeft + cropRight) * cropUnitX;
+            int height = (2 - frameMbsOnly) * heightInMapUnits * 16 - (cropTop + cropBottom) * cropUnitY;
+            return new SpsInfo(profile, compatibility, level, width, height);
+        } catch (IndexOutOfBoundsException ex) {
+            return null;
+        }
+    }
+
+    private static void skipScalingLists(BitReader reader, int count) {
+        for (int i = 0; i < count; i++) {
+            if (reader.bits(1) == 0) {
+                continue;
+            }
+            int size = i < 6 ? 16 : 64;
+            int last = 8;
+            int next = 8;
+            for (int j = 0; j < size; j++) {
+                if (next != 0) {
+                    next = (last + reader.se() + 256) % 256;
+                }
+                last = next == 0 ? last : next;
+            }
+        }
+    }
+
+    /**
+     * 去掉防竞争字节（00 00 03 中的 03）。
+     */
+    private static byte[] unescape(byte[] nal) {
+        byte[] out = new byte[nal.length];
+        int length = 0;
+        int zeros = 0;
+        for (byte value : nal) {
+            if (zeros >= 2 && value == 3) {
+                zeros = 0;
+                continue;
+            }
+            out[length++] = value;
+            zeros = value == 0 ? zeros + 1 : 0;
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    private static final class BitReader {
+        private final byte[] data;
+        private int offset;
+
+        private BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        int bits(int count) {
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                int bit = (data[offset >> 3] >> (7 - (offset & 7))) & 1;
+                value = (value << 1) | bit;
+                offset++;
+            }
+            return value;
+        }
+
+        void skip(int count) {
+            offset += count;
+        }
+
+        /**
+         * 无符号指数哥伦布码。
+         */
+        int ue() {
+            int zeros = 0;
+            while (bits(1) == 0) {
+                if (++zeros > 30) {
+                    throw new IndexOutOfBoundsException("Invalid exp-Golomb code");
+                }
+            }
+            return zeros == 0 ? 0 : (1 << zeros) - 1 + bits(zeros);
+        }
+
+        int se() {
+            int value = ue();
+            return (value & 1) == 1 ? (value + 1) / 2 : -(value / 2);
+        }
+    }
+}
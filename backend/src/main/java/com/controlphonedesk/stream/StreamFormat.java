@@ -0,0 +1,24 @@
+package com.controlphonedesk.stream;
+
+/**
+ * 观看者接收的视频格式。
+ */
+public enum StreamFormat {
+    /** 设备原始 H.264 Annex B 帧，由浏览器自行解码/封装 */
+    RAW,
+    /** 服务端封装的 fMP4：初始化段 + 每帧一个媒体段，可直接交给 MSE */
+    FMP4;
+
+    /**
+     * 解析查询参数或订阅命令中的 format，为空时为 RAW，无法识别时返回 null。
+     */
+    public static StreamFormat parse(String value) {
+        if (value == null || value.isBlank() || "raw".equalsIgnoreCase(value)) {
+            return RAW;
+        }
+        if ("fmp4".equalsIgnoreCase(value)) {
+            return FMP4;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,82 @@
+package com.controlphonedesk.stream;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 设备上行的一帧数据（引用计数），同一帧在所有观看者之间共享，不按观看者拷贝。
+ * 创建时计数为 1（归属 hub），每个发送方 retain 后在发送完成时 release。
+ */
+public final class StreamFrame {
+    private final ByteBuffer data;
+    private final FrameKind kind;
+    private final Runnable deallocator;
+    // 到达时间（System.nanoTime），fMP4 封装据此生成时间戳
+    private final long receivedAt = System.nanoTime();
+    private final AtomicInteger refCnt = new AtomicInteger(1);
+
+    private StreamFrame(ByteBuffer data, FrameKind kind, Runnable deallocator) {
+        this.data = data;
+        this.kind = kind;
+        this.deallocator = deallocator;
+    }
+
+    /**
+     * 包装已组装好的缓冲区（已 flip，不拷贝），引用归零时归还缓冲池。
+     */
+    public static StreamFrame of(ByteBuffer data, BufferPool pool) {
+        return of(data, NalUnits.classify(data), pool);
+    }
+
+    /**
+     * 包装已知类型的缓冲区（如封装后的 fMP4 段），引用归零时归还缓冲池（非池化缓冲区会被忽略）。
+     */
+    public static StreamFrame of(ByteBuffer data, FrameKind kind, BufferPool pool) {
+        return new StreamFrame(data, kind, () -> pool.release(data));
+    }
+
+    /**
+     * 返回独立视图（position/limit 互不影响），用于交给某个会话发送。
+     */
+    public ByteBuffer payload() {
+        return data.duplicate();
+    }
+
+    public FrameKind kind() {
+        return kind;
+    }
+
+    public long receivedAt() {
+        return receivedAt;
+    }
+
+    public int size() {
+        return data.remaining();
+    }
+
+    public StreamFrame retain() {
+        int current;
+        do {
+            current = refCnt.get();
+            if (current <= 0) {
+                throw new IllegalStateException("Frame already released");
+            }
+        } while (!refCnt.compareAndSet(current, current + 1));
+        return this;
+    }
+
+    public void release() {
+        int remaining = refCnt.decrementAndGet();
+        if (remaining == 0) {
+            if (deallocator != null) {
+                deallocator.run();
+            }
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Frame released too many times");
+        }
+    }
+
+    public int refCnt() {
+        return refCnt.get();
+    }
+}
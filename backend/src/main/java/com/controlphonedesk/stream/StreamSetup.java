@@ -0,0 +1,13 @@
+package com.controlphonedesk.stream;
+
+/**
+ * 建立设备上行各阶段耗时：启动 server（已在运行时为 0）、建立 forward、WebSocket 握手（含就绪探测次数）。
+ */
+public record StreamSetup(
+    double serverMs,
+    double forwardMs,
+    double connectMs,
+    int connectAttempts,
+    double totalMs
+) {
+}
@@ -0,0 +1,26 @@
+package com.controlphonedesk.stream;
+
+import java.util.List;
+
+/**
+ * 单台设备共享流的统计快照；upstreamControl* 为浏览器控制消息从入队到发往设备完成的延迟，
+ * coalescedControl 为上行积压时被合并掉的触摸 MOVE / 滚动消息数，adaptiveLevel 为自适应码率当前降档级别（0 为浏览器请求的参数）。
+ */
+public record StreamStats(
+    String udid,
+    int localPort,
+    String transport,
+    long receivedFrames,
+    long receivedBytes,
+    int cachedGopFrames,
+    long cachedGopBytes,
+    StreamSetup setup,
+    int adaptiveLevel,
+    long upstreamControlSent,
+    long coalescedControl,
+    double lastUpstreamControlLatencyMs,
+    double avgUpstreamControlLatencyMs,
+    double maxUpstreamControlLatencyMs,
+    List<ViewerStats> viewers
+) {
+}
@@ -0,0 +1,14 @@
+package com.controlphonedesk.stream;
+
+/**
+ * 设备流的旁路消费者（如录制）：与观看者收到相同的原始帧，但不计入观看者统计，也不参与自适应码率。
+ * 挂接期间设备流保持打开。onFrame 在上行读取线程上、扇出锁内调用，不得阻塞；需要保留帧时自行 retain。
+ */
+public interface StreamTap {
+    void onFrame(StreamFrame frame);
+
+    /**
+     * 上行断开，设备流已释放，之后不会再收到帧。
+     */
+    void onUpstreamClosed();
+}
@@ -0,0 +1,52 @@
+package com.controlphonedesk.stream;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 设备侧上行（scrcpy web 模式 WebSocket）的连接方式：JDK HttpClient，或直接基于 SocketChannel 的精简实现。
+ * 由 {@link DeviceStreamHub} 按配置选择，{@link DeviceStream} 只依赖本接口。
+ */
+public interface UpstreamTransport {
+    /**
+     * 名称，出现在流统计中。
+     */
+    String name();
+
+    /**
+     * 连接本机转发端口并完成 WebSocket 握手；握手失败时结果异常完成，不会回调 receiver。
+     */
+    CompletableFuture<Connection> connect(int localPort, Duration timeout, Receiver receiver);
+
+    /**
+     * 已建立的上行连接。发送方法由调用方串行调用，payload 在返回的 future 完成前归调用方所有。
+     */
+    interface Connection {
+        CompletableFuture<?> sendBinary(ByteBuffer payload);
+
+        CompletableFuture<?> sendText(String text);
+
+        /**
+         * 立即断开，不再回调 receiver。
+         */
+        void abort();
+    }
+
+    /**
+     * 上行消息回调，在传输层的读取线程上执行，不应阻塞。
+     */
+    interface Receiver {
+        /**
+         * 一条完整的二进制消息：已 flip 的池化缓冲区，所有权转移给接收方。
+         */
+        void onBinary(ByteBuffer message);
+
+        void onText(String text);
+
+        /**
+         * 对端关闭或读取出错。
+         */
+        void onClosed();
+    }
+}
@@ -0,0 +1,357 @@
+package com.controlphonedesk.stream;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.web.socket.CloseStatus;
+
+/**
+ * 单个浏览器会话的下行发送端：有界队列 + 独立写线程（虚拟线程）。
+ * 慢客户端只会在自己的队列里积压，不会阻塞设备上行读取；
+ * 队列溢出时丢弃排队中的画面帧，并丢弃后续非关键帧直到下一个 IDR。
+ * 设备消息（剪贴板、推送回执）与文本走优先队列，只需等待正在写出的一帧。
+ * 预览模式（缩略图）只转发 scrcpy_initial、参数集与关键帧，关键帧按固定间隔发送：
+ * 间隔内到达的关键帧只保留最新一个，到期后发出，其余帧直接跳过。
+ */
+public class ViewerSession {
+    private final ViewerSink sink;
+    private final int capacity;
+    private final long joinWaitNanos;
+    // 预览模式的关键帧最小间隔，0 为普通模式
+    private final long previewIntervalNanos;
+    private final ArrayDeque<Outbound> queue = new ArrayDeque<>();
+    private final ArrayDeque<Outbound> controlQueue = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int videoQueued;
+    private boolean awaitingKeyFrame;
+    private boolean closed;
+    private volatile boolean skipJoinSettings;
+    // 预览模式：等待间隔到期的最新关键帧，以及上一个关键帧开始发送的时间
+    private StreamFrame heldKey;
+    private long lastKeyAt;
+
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+    private final AtomicLong skippedFrames = new AtomicLong();
+    private final LatencyTracker latency = new LatencyTracker();
+    private final LatencyTracker controlLatency = new LatencyTracker();
+
+    ViewerSession(ViewerSink sink, int capacity, long joinWaitNanos, long previewIntervalNanos) {
+        this.sink = sink;
+        this.capacity = Math.max(1, capacity);
+        this.joinWaitNanos = joinWaitNanos;
+        this.previewIntervalNanos = Math.max(0, previewIntervalNanos);
+        this.lastKeyAt = System.nanoTime() - this.previewIntervalNanos;
+    }
+
+    public ViewerSink getSink() {
+        return sink;
+    }
+
+    boolean isPreview() {
+        return previewIntervalNanos > 0;
+    }
+
+    void start() {
+        Thread.ofVirtual().name("ws-writer-" + sink.id()).start(this::writeLoop);
+    }
+
+    /**
+     * 入队一帧（调用方已 retain，本方法负责最终 release）。
+     */
+    void offer(StreamFrame frame) {
+        lock.lock();
+        try {
+            if (closed) {
+                frame.release();
+                return;
+            }
+            if (isPreview()) {
+                offerPreview(frame);
+                return;
+            }
+            FrameKind kind = frame.kind();
+            if (kind == FrameKind.DEVICE_MESSAGE) {
+                controlQueue.addLast(new Outbound(frame, null, System.nanoTime(), false, true));
+                notEmpty.signal();
+                return;
+            }
+            if (kind.isVideo()) {
+                if (awaitingKeyFrame && kind != FrameKind.KEY) {
+                    drop(frame);
+                    return;
+                }
+                if (videoQueued >= capacity) {
+                    // 积压已超过上限：旧画面已无意义，清空后从下一个关键帧重新开始
+                    dropQueuedVideo();
+                    if (kind != FrameKind.KEY) {
+                        awaitingKeyFrame = true;
+                        drop(frame);
+                        return;
+                    }
+                }
+                if (kind == FrameKind.KEY) {
+                    awaitingKeyFrame = false;
+                }
+                videoQueued++;
+            }
+            // 参数集与 scrcpy_initial 体积小且不可丢，总是入队
+            queue.addLast(new Outbound(frame, null, System.nanoTime(), false, false));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 预览模式入队（调用方持有锁）：排队未发的旧关键帧被新关键帧替换；
+     * 距上一个关键帧不足间隔时暂存为 heldKey，由写线程到期后发出。
+     */
+    private void offerPreview(StreamFrame frame) {
+        switch (frame.kind()) {
+            case KEY -> {
+                dropQueuedVideo();
+                releaseHeldKey();
+                if (System.nanoTime() - lastKeyAt >= previewIntervalNanos) {
+                    queue.addLast(new Outbound(frame, null, System.nanoTime(), false, false));
+                    videoQueued++;
+                } else {
+                    heldKey = frame;
+                }
+                notEmpty.signal();
+            }
+            case CONFIG, INITIAL -> {
+                if (frame.kind() == FrameKind.CONFIG) {
+                    // 编码器已重启，暂存的关键帧无法用新参数集解码
+                    releaseHeldKey();
+                }
+                queue.addLast(new Outbound(frame, null, System.nanoTime(), false, false));
+                notEmpty.signal();
+            }
+            default -> {
+                skippedFrames.incrementAndGet();
+                frame.release();
+            }
+        }
+    }
+
+    private void releaseHeldKey() {
+        if (heldKey != null) {
+            skippedFrames.incrementAndGet();
+            heldKey.release();
+            heldKey = null;
+        }
+    }
+
+    /**
+     * 入队一帧补发数据（加入时的 GOP 缓存）：不计入队列上限，也不会被丢弃。
+     */
+    void offerPinned(StreamFrame frame) {
+        lock.lock();
+        try {
+            if (closed) {
+                frame.release();
+                return;
+            }
+            queue.addLast(new Outbound(frame, null, System.nanoTime(), true, false));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 丢弃后续非关键帧直到下一个 IDR（补发的 GOP 不完整时使用）。
+     */
+    void awaitKeyFrame() {
+        lock.lock();
+        try {
+            awaitingKeyFrame = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void skipJoinSettings() {
+        skipJoinSettings = true;
+    }
+
+    /**
+     * 加入已在播放的流时，浏览器首个视频参数消息只用于本地，不转发设备；只跳过一次。
+     */
+    boolean takeJoinSettingsSkip() {
+        if (!skipJoinSettings) {
+            return false;
+        }
+        skipJoinSettings = false;
+        return true;
+    }
+
+    void offerText(String text) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            controlQueue.addLast(new Outbound(null, text, System.nanoTime(), false, true));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 停止写线程并释放排队中的帧。
+     */
+    void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (ArrayDeque<Outbound> pending : List.of(controlQueue, queue)) {
+                for (Outbound outbound : pending) {
+                    if (outbound.frame() != null) {
+                        outbound.frame().release();
+                    }
+                }
+                pending.clear();
+            }
+            videoQueued = 0;
+            if (heldKey != null) {
+                heldKey.release();
+                heldKey = null;
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public ViewerStats stats() {
+        int depth;
+        lock.lock();
+        try {
+            depth = queue.size() + controlQueue.size();
+        } finally {
+            lock.unlock();
+        }
+        return new ViewerStats(
+            sink.id(),
+            LatencyTracker.toMillis(joinWaitNanos),
+            isPreview(),
+            // 预览只取关键帧，不限制降档
+            isPreview() ? AdaptiveBitrateController.LOWEST_LEVEL : sink.qualityFloor(),
+            depth,
+            sentFrames.get(),
+            sentBytes.get(),
+            droppedFrames.get(),
+            droppedBytes.get(),
+            skippedFrames.get(),
+            latency.lastMs(),
+            latency.avgMs(),
+            latency.maxMs(),
+            controlLatency.count(),
+            controlLatency.lastMs(),
+            controlLatency.avgMs(),
+            controlLatency.maxMs()
+        );
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Outbound next;
+            lock.lock();
+            try {
+                while (queue.isEmpty() && controlQueue.isEmpty() && !closed) {
+                    if (heldKey == null) {
+                        notEmpty.await();
+                        continue;
+                    }
+                    long wait = lastKeyAt + previewIntervalNanos - System.nanoTime();
+                    if (wait > 0) {
+                        notEmpty.awaitNanos(wait);
+                        continue;
+                    }
+                    queue.addLast(new Outbound(heldKey, null, System.nanoTime(), false, false));
+                    videoQueued++;
+                    heldKey = null;
+                }
+                if (closed) {
+                    return;
+                }
+                next = controlQueue.pollFirst();
+                if (next == null) {
+                    next = queue.pollFirst();
+                }
+                if (isCounted(next)) {
+                    videoQueued--;
+                }
+                if (next.frame() != null && next.frame().kind() == FrameKind.KEY) {
+                    lastKeyAt = System.nanoTime();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            send(next);
+        }
+    }
+
+    private void send(Outbound outbound) {
+        StreamFrame frame = outbound.frame();
+        try {
+            if (sink.isOpen()) {
+                if (frame != null) {
+                    sink.sendBinary(frame.payload());
+                    sentBytes.addAndGet(frame.size());
+                } else {
+                    sink.sendText(outbound.text());
+                }
+                sentFrames.incrementAndGet();
+                (outbound.control() ? controlLatency : latency).record(System.nanoTime() - outbound.enqueuedAt());
+            }
+        } catch (Exception ex) {
+            close();
+            sink.close(CloseStatus.SERVER_ERROR);
+        } finally {
+            if (frame != null) {
+                frame.release();
+            }
+        }
+    }
+
+    private void dropQueuedVideo() {
+        Iterator<Outbound> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Outbound outbound = iterator.next();
+            if (isCounted(outbound)) {
+                iterator.remove();
+                drop(outbound.frame());
+            }
+        }
+        videoQueued = 0;
+    }
+
+    private static boolean isCounted(Outbound outbound) {
+        return !outbound.pinned() && outbound.frame() != null && outbound.frame().kind().isVideo();
+    }
+
+    private void drop(StreamFrame frame) {
+        droppedFrames.incrementAndGet();
+        droppedBytes.addAndGet(frame.size());
+        frame.release();
+    }
+
+    private record Outbound(StreamFrame frame, String text, long enqueuedAt, boolean pinned, boolean control) {
+    }
+}
@@ -0,0 +1,57 @@
+package com.controlphonedesk.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * 观看者的下行出口：单设备连接对应一个浏览器 WebSocket 会话，设备墙中对应复用连接上的一个通道。
+ * 同一出口的发送只由其 {@link ViewerSession} 写线程调用。
+ */
+public interface ViewerSink {
+    /**
+     * 用于统计与日志的标识。
+     */
+    String id();
+
+    boolean isOpen();
+
+    void sendBinary(ByteBuffer payload) throws IOException;
+
+    void sendText(String text) throws IOException;
+
+    /**
+     * 结束该观看者（上行断开或发送失败时调用），不应抛出异常。
+     */
+    void close(CloseStatus status);
+
+    /**
+     * 观看者可接受的最低画质，取值为自适应码率档位（0 为原画质，越大越低）；
+     * 设备流按所有观看者中最小的值作为降档下限。
+     */
+    default int qualityFloor() {
+        return 0;
+    }
+
+    /**
+     * 是否为预览观看者（缩略图）：只接收参数集与按固定间隔的关键帧，不接收设备消息。
+     */
+    default boolean preview() {
+        return false;
+    }
+
+    /**
+     * 下行视频格式，默认原始 H.264 帧。
+     */
+    default StreamFormat format() {
+        return StreamFormat.RAW;
+    }
+
+    /**
+     * 直接以整个 WebSocket 会话作为出口。
+     */
+    static ViewerSink of(WebSocketSession session, boolean preview, StreamFormat format) {
+        return new SessionViewerSink(session, preview, format);
+    }
+}
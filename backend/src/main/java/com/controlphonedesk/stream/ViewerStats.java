@@ -0,0 +1,27 @@
+package com.controlphonedesk.stream;
+
+/**
+ * 单个观看会话的下行统计（加入等待时间、是否预览、画质下限、队列深度、发送/丢弃计数、入队到发送完成的延迟）。
+ * skippedFrames 为预览模式按设计跳过的帧（非关键帧、被更新关键帧替换的帧），不计入丢帧。
+ * control* 为设备消息与文本（优先队列）的单独统计，其余延迟字段不含这部分。
+ */
+public record ViewerStats(
+    String sessionId,
+    double joinWaitMs,
+    boolean preview,
+    int qualityFloor,
+    int queueDepth,
+    long sentFrames,
+    long sentBytes,
+    long droppedFrames,
+    long droppedBytes,
+    long skippedFrames,
+    double lastSendLatencyMs,
+    double avgSendLatencyMs,
+    double maxSendLatencyMs,
+    long controlSent,
+    double lastControlLatencyMs,
+    double avgControlLatencyMs,
+    double maxControlLatencyMs
+) {
+}
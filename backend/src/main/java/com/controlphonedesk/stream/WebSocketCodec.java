@@ -0,0 +1,92 @@
+package com.controlphonedesk.stream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 客户端侧 WebSocket（RFC 6455）最小编解码：握手报文、帧头编码与掩码。
+ * 帧头写入调用方复用的小缓冲区，载荷原地加掩码，不产生中间拷贝。
+ */
+final class WebSocketCodec {
+    static final int OP_CONTINUATION = 0x0;
+    static final int OP_TEXT = 0x1;
+    static final int OP_BINARY = 0x2;
+    static final int OP_CLOSE = 0x8;
+    static final int OP_PING = 0x9;
+    static final int OP_PONG = 0xA;
+    /** 客户端帧头最大长度：2 + 8（扩展长度）+ 4（掩码） */
+    static final int MAX_HEADER_BYTES = 14;
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private WebSocketCodec() {
+    }
+
+    static String newKey() {
+        byte[] nonce = new byte[16];
+        ThreadLocalRandom.current().nextBytes(nonce);
+        return Base64.getEncoder().encodeToString(nonce);
+    }
+
+    static String handshakeRequest(String hostPort, String key) {
+        return "GET / HTTP/1.1\r\n"
+            + "Host: " + hostPort + "\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Sec-WebSocket-Key: " + key + "\r\n"
+            + "Sec-WebSocket-Version: 13\r\n"
+            + "\r\n";
+    }
+
+    static String expectedAccept(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                .digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * 写入带掩码的单帧帧头（FIN=1），返回掩码；header 写完后已 flip。
+     */
+    static int writeHeader(ByteBuffer header, int opcode, int length) {
+        int mask = ThreadLocalRandom.current().nextInt();
+        header.clear();
+        header.put((byte) (0x80 | opcode));
+        if (length < 126) {
+            header.put((byte) (0x80 | length));
+        } else if (length <= 0xFFFF) {
+            header.put((byte) (0x80 | 126));
+            header.putShort((short) length);
+        } else {
+            header.put((byte) (0x80 | 127));
+            header.putLong(length);
+        }
+        header.putInt(mask);
+        header.flip();
+        return mask;
+    }
+
+    /**
+     * 对 payload 的 [position, limit) 原地异或掩码（按 8 字节批量处理），不移动 position。
+     */
+    static void mask(ByteBuffer payload, int mask) {
+        ByteBuffer view = payload.duplicate().order(ByteOrder.BIG_ENDIAN);
+        long wide = ((long) mask << 32) | (mask & 0xFFFFFFFFL);
+        int start = view.position();
+        int limit = view.limit();
+        int index = start;
+        for (; index + 8 <= limit; index += 8) {
+            view.putLong(index, view.getLong(index) ^ wide);
+        }
+        for (; index < limit; index++) {
+            view.put(index, (byte) (view.get(index) ^ (mask >>> (24 - 8 * ((index - start) & 3)))));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.controlphonedesk.stream.web;
+
+import com.controlphonedesk.auth.RequirePermission;
+import com.controlphonedesk.rbac.seed.DefaultPermissions;
+import com.controlphonedesk.stream.DeviceStreamHub;
+import com.controlphonedesk.stream.StreamStats;
+import java.util.List;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/streams")
+public class StreamController {
+    private final DeviceStreamHub streamHub;
+
+    public StreamController(DeviceStreamHub streamHub) {
+        this.streamHub = streamHub;
+    }
+
+    /**
+     * 当前共享流及每个观看会话的队列深度、丢帧数与发送延迟。
+     */
+    @GetMapping
+    @RequirePermission(DefaultPermissions.STREAM_STATS)
+    public List<StreamStats> listStreams() {
+        return streamHub.stats();
+    }
+}
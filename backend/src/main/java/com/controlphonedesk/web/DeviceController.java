@@ -1,6 +1,12 @@
 package com.controlphonedesk.web;
 
+import com.controlphonedesk.adb.AdbForwardPool;
+import com.controlphonedesk.adb.AdbForwardStats;
+import com.controlphonedesk.adb.AdbSchedulerStats;
+import com.controlphonedesk.adb.AdbService;
 import com.controlphonedesk.auth.RequirePermission;
+import com.controlphonedesk.device.DeviceFactsCache;
+import com.controlphonedesk.device.DeviceFactsCacheStats;
 import com.controlphonedesk.device.DeviceInfo;
 import com.controlphonedesk.device.DeviceService;
 import com.controlphonedesk.device.dto.DeviceDto;
@@ -9,11 +15,15 @@ import com.controlphonedesk.device.service.DeviceRegistryService;
 import com.controlphonedesk.rbac.seed.DefaultPermissions;
 import com.controlphonedesk.rbac.service.UserDeviceScope;
 import com.controlphonedesk.rbac.service.UserDeviceScopeService;
+import com.controlphonedesk.recording.RecordingService;
+import com.controlphonedesk.recording.RecordingStats;
 import com.controlphonedesk.scrcpy.ScrcpyService;
+import com.controlphonedesk.scrcpy.ServerStatus;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -28,20 +38,32 @@ import com.controlphonedesk.auth.UserPrincipal;
 @RequestMapping("/api")
 public class DeviceController {
     private final DeviceService deviceService;
+    private final DeviceFactsCache deviceFactsCache;
+    private final AdbService adbService;
+    private final AdbForwardPool forwardPool;
     private final ScrcpyService scrcpyService;
     private final DeviceRegistryService deviceRegistryService;
     private final UserDeviceScopeService userDeviceScopeService;
+    private final RecordingService recordingService;
 
     public DeviceController(
         DeviceService deviceService,
+        DeviceFactsCache deviceFactsCache,
+        AdbService adbService,
+        AdbForwardPool forwardPool,
         ScrcpyService scrcpyService,
         DeviceRegistryService deviceRegistryService,
-        UserDeviceScopeService userDeviceScopeService
+        UserDeviceScopeService userDeviceScopeService,
+        RecordingService recordingService
     ) {
         this.deviceService = deviceService;
+        this.deviceFactsCache = deviceFactsCache;
+        this.adbService = adbService;
+        this.forwardPool = forwardPool;
         this.scrcpyService = scrcpyService;
         this.deviceRegistryService = deviceRegistryService;
         this.userDeviceScopeService = userDeviceScopeService;
+        this.recordingService = recordingService;
     }
 
     /**
@@ -53,6 +75,42 @@ public class DeviceController {
         return deviceService.listDevices();
     }
 
+    /**
+     * 设备信息缓存的命中统计。
+     */
+    @GetMapping("/devices/adb/cache")
+    @RequirePermission(DefaultPermissions.DEVICE_ADB_LIST)
+    public DeviceFactsCacheStats deviceCacheStats() {
+        return deviceFactsCache.stats();
+    }
+
+    /**
+     * adb 命令调度器的并发占用与各优先级排队耗时。
+     */
+    @GetMapping("/devices/adb/scheduler")
+    @RequirePermission(DefaultPermissions.DEVICE_ADB_LIST)
+    public AdbSchedulerStats adbSchedulerStats() {
+        return adbService.schedulerStats();
+    }
+
+    /**
+     * adb 端口转发池：端口范围、已分配端口与各转发的引用数。
+     */
+    @GetMapping("/devices/adb/forwards")
+    @RequirePermission(DefaultPermissions.DEVICE_ADB_LIST)
+    public AdbForwardStats adbForwards() {
+        return forwardPool.stats();
+    }
+
+    /**
+     * 各设备 scrcpy server 的生命周期状态与阶段耗时。
+     */
+    @GetMapping("/devices/scrcpy/servers")
+    @RequirePermission(DefaultPermissions.DEVICE_ADB_LIST)
+    public List<ServerStatus> scrcpyServers() {
+        return scrcpyService.serverStatuses();
+    }
+
     /**
      * 获取设备列表（合并本地元数据）。
      */
@@ -100,14 +158,60 @@ public class DeviceController {
                     .body(Map.of("message", "无权限访问该设备"));
             }
         }
-        // 强制重启，确保新连接能拿到 SPS/PPS/IDR
-        int pid = scrcpyService.ensureServerRunning(udid, true);
+        // 共享流缓存了 SPS/PPS/IDR，新连接加入时会先补发，无需重启 server
+        int pid = scrcpyService.ensureServerRunning(udid);
         Map<String, Object> response = new HashMap<>();
         response.put("udid", udid);
         response.put("pid", pid);
         return org.springframework.http.ResponseEntity.ok(response);
     }
 
+    /**
+     * 当前录制列表（写盘字节、分段数与丢弃字节）。
+     */
+    @GetMapping("/devices/recordings")
+    @RequirePermission(DefaultPermissions.STREAM_STATS)
+    public List<RecordingStats> listRecordings() {
+        return recordingService.stats();
+    }
+
+    /**
+     * 开始录制设备画面到本地分段文件（已在录制时返回当前状态）。占用服务器磁盘，需要单独的录制权限。
+     */
+    @PostMapping("/devices/{udid}/recording")
+    @RequirePermission(DefaultPermissions.RECORDING_MANAGE)
+    public org.springframework.http.ResponseEntity<?> startRecording(@PathVariable String udid) throws Exception {
+        UserPrincipal principal = getCurrentPrincipal();
+        if (shouldApplyScope(principal) && !userDeviceScopeService.canAccessDevice(principal.getId(), udid)) {
+            return org.springframework.http.ResponseEntity.status(HttpStatus.FORBIDDEN)
+                .body(Map.of("message", "无权限访问该设备"));
+        }
+        RecordingStats stats = recordingService.start(udid);
+        if (stats == null) {
+            return org.springframework.http.ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE)
+                .body(Map.of("message", "录制目录已达到容量上限"));
+        }
+        return org.springframework.http.ResponseEntity.ok(stats);
+    }
+
+    /**
+     * 停止录制，排队中的数据写完后关闭文件。
+     */
+    @DeleteMapping("/devices/{udid}/recording")
+    @RequirePermission(DefaultPermissions.RECORDING_MANAGE)
+    public org.springframework.http.ResponseEntity<?> stopRecording(@PathVariable String udid) {
+        UserPrincipal principal = getCurrentPrincipal();
+        if (shouldApplyScope(principal) && !userDeviceScopeService.canAccessDevice(principal.getId(), udid)) {
+            return org.springframework.http.ResponseEntity.status(HttpStatus.FORBIDDEN)
+                .body(Map.of("message", "无权限访问该设备"));
+        }
+        RecordingStats stats = recordingService.stop(udid);
+        if (stats == null) {
+            return org.springframework.http.ResponseEntity.notFound().build();
+        }
+        return org.springframework.http.ResponseEntity.ok(stats);
+    }
+
     private UserPrincipal getCurrentPrincipal() {
         var authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication == null || !(authentication.getPrincipal() instanceof UserPrincipal principal)) {
@@ -0,0 +1,214 @@
+package com.controlphonedesk.web;
+
+import com.controlphonedesk.AppProperties;
+import com.controlphonedesk.rbac.service.UserDeviceScopeService;
+import com.controlphonedesk.stream.DeviceStream;
+import com.controlphonedesk.stream.DeviceStreamHub;
+import com.controlphonedesk.stream.StreamFormat;
+import java.nio.ByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * 设备墙复用连接（/ws/wall）：一条浏览器 WebSocket 承载多台设备的画面，只做一次握手和一次登录校验。
+ * 每个通道是对应设备共享流的一个观看者，与 /ws/scrcpy 共用上行和 adb forward。
+ * <p>
+ * 浏览器 -> 服务端文本命令（JSON）：
+ * {"op":"subscribe","channel":1,"udid":"...","quality":"low","mode":"preview","format":"fmp4"}
+ * （quality、mode、format 可省略）、
+ * {"op":"unsubscribe","channel":1}、{"op":"quality","channel":1,"quality":"high|medium|low"}。
+ * 服务端 -> 浏览器文本事件（JSON）：subscribed、error（带 message）、closed、text（设备文本消息，带 data）。
+ * 二进制消息双向均为 [通道号 u16 大端][原 scrcpy 消息]。
+ * mode=preview 的通道只接收参数集与定时关键帧，适合大量缩略图。
+ */
+@Component
+public class DeviceWallWebSocketHandler extends AbstractWebSocketHandler {
+    private static final Logger log = LoggerFactory.getLogger(DeviceWallWebSocketHandler.class);
+    private static final String ATTR_CONNECTION = "wallConnection";
+    private static final int MAX_CHANNEL = 0xffff;
+
+    private final DeviceStreamHub streamHub;
+    private final UserDeviceScopeService userDeviceScopeService;
+    private final AppProperties properties;
+    private final JsonMapper jsonMapper;
+
+    public DeviceWallWebSocketHandler(
+        DeviceStreamHub streamHub,
+        UserDeviceScopeService userDeviceScopeService,
+        AppProperties properties,
+        JsonMapper jsonMapper
+    ) {
+        this.streamHub = streamHub;
+        this.userDeviceScopeService = userDeviceScopeService;
+        this.properties = properties;
+        this.jsonMapper = jsonMapper;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        session.setBinaryMessageSizeLimit(5 * 1024 * 1024);
+        session.setTextMessageSizeLimit(1 * 1024 * 1024);
+        session.getAttributes().put(ATTR_CONNECTION, new WallConnection(session, jsonMapper));
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        WallConnection connection = getConnection(session);
+        if (connection == null) {
+            session.close(CloseStatus.SERVER_ERROR);
+            return;
+        }
+        JsonNode command;
+        try {
+            command = jsonMapper.readTree(message.getPayload());
+        } catch (JacksonException ex) {
+            connection.sendEvent("error", -1, "message", "invalid command");
+            return;
+        }
+        String op = command.path("op").asString("");
+        int channel = command.path("channel").asInt(-1);
+        if (channel < 0 || channel > MAX_CHANNEL) {
+            connection.sendEvent("error", channel, "message", "invalid channel");
+            return;
+        }
+        switch (op) {
+            case "subscribe" -> subscribe(connection, channel, command.path("udid").asString(""),
+                command.path("quality").asString(null), "preview".equalsIgnoreCase(command.path("mode").asString("")),
+                StreamFormat.parse(command.path("format").asString(null)));
+            case "unsubscribe" -> release(connection, connection.channels().get(channel), false);
+            case "quality" -> changeQuality(connection, channel, command.path("quality").asString(null));
+            default -> connection.sendEvent("error", channel, "message", "unknown op: " + op);
+        }
+    }
+
+    /**
+     * 浏览器发来的二进制数据按通道号转发到对应设备，上行未就绪时暂存；未知通道的消息丢弃。
+     */
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        WallConnection connection = getConnection(session);
+        if (connection == null) {
+            session.close(CloseStatus.SERVER_ERROR);
+            return;
+        }
+        ByteBuffer payload = message.getPayload();
+        if (payload.remaining() <= 2) {
+            return;
+        }
+        WallChannel channel = connection.channels().get(payload.getShort(payload.position()) & 0xffff);
+        if (channel != null) {
+            channel.pending().sendBinary(payload.slice(payload.position() + 2, payload.remaining() - 2));
+        }
+    }
+
+    /**
+     * 连接关闭时摘除所有通道；仍在建立中的通道由建立完成的回调摘除。
+     */
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        WallConnection connection = getConnection(session);
+        if (connection == null) {
+            return;
+        }
+        for (WallChannel channel : connection.channels().values()) {
+            release(connection, channel, false);
+        }
+    }
+
+    private void subscribe(
+        WallConnection connection,
+        int channelId,
+        String udid,
+        String quality,
+        boolean preview,
+        StreamFormat format
+    ) throws Exception {
+        int floor = WallChannel.qualityFloor(quality);
+        if (udid.isBlank() || floor < 0 || format == null) {
+            String message = udid.isBlank() ? "missing udid" : floor < 0 ? "invalid quality" : "invalid format";
+            connection.sendEvent("error", channelId, "message", message);
+            return;
+        }
+        WebSocketSession session = connection.session();
+        Long uid = WebSocketSessions.getSessionUserId(session);
+        if (uid != null && WebSocketSessions.shouldApplyScope(session)
+            && !userDeviceScopeService.canAccessDevice(uid, udid)) {
+            connection.sendEvent("error", channelId, "message", "forbidden");
+            return;
+        }
+        if (connection.channels().containsKey(channelId)) {
+            connection.sendEvent("error", channelId, "message", "channel in use");
+            return;
+        }
+        if (connection.channels().size() >= Math.max(1, properties.getStream().getWallMaxChannels())) {
+            connection.sendEvent("error", channelId, "message", "too many channels");
+            return;
+        }
+        WallChannel channel = new WallChannel(connection, channelId, udid, floor, preview, format,
+            properties.getStream().getEarlyMessageLimit(), closed -> release(connection, closed, true));
+        connection.channels().put(channelId, channel);
+        streamHub.attach(udid, channel).whenComplete((stream, error) -> {
+            if (error != null) {
+                log.warn("Wall channel attach failed: udid={} channel={} error={}",
+                    udid, channel.id(), WebSocketSessions.rootMessage(error));
+                if (connection.channels().remove(channelId, channel)) {
+                    channel.pending().close();
+                    connection.sendEventQuietly("error", channelId, "message", "device unavailable");
+                }
+                return;
+            }
+            if (!channel.pending().ready(stream)) {
+                // 建立期间通道已退订或连接已断开
+                streamHub.detach(udid, channel);
+                return;
+            }
+            connection.sendEventQuietly("subscribed", channelId, "udid", udid);
+        });
+    }
+
+    /**
+     * 调整通道的画质提示，由自适应码率在下一次采样时生效。
+     */
+    private void changeQuality(WallConnection connection, int channelId, String quality) throws Exception {
+        WallChannel channel = connection.channels().get(channelId);
+        int floor = WallChannel.qualityFloor(quality);
+        if (channel == null || floor < 0) {
+            connection.sendEvent("error", channelId, "message", channel == null ? "unknown channel" : "invalid quality");
+            return;
+        }
+        channel.setQualityFloor(floor);
+    }
+
+    /**
+     * 结束一个通道：从连接上移除并从设备流摘除。notify 为 true 时（设备侧断开或发送失败）通知浏览器。
+     */
+    private void release(WallConnection connection, WallChannel channel, boolean notify) {
+        if (channel == null || !connection.channels().remove(channel.channelId(), channel)) {
+            return;
+        }
+        DeviceStream stream = channel.pending().close();
+        if (stream != null) {
+            streamHub.detach(channel.udid(), channel);
+        }
+        if (notify) {
+            connection.sendEventQuietly("closed", channel.channelId(), null, null);
+        }
+    }
+
+    private WallConnection getConnection(WebSocketSession session) {
+        Object connection = session.getAttributes().get(ATTR_CONNECTION);
+        if (connection instanceof WallConnection wallConnection) {
+            return wallConnection;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,103 @@
+package com.controlphonedesk.web;
+
+import com.controlphonedesk.stream.DeviceStream;
+import com.controlphonedesk.stream.ViewerSink;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * 观看者（浏览器会话或设备墙通道）在设备上行就绪前的过渡状态：期间收到的消息按顺序暂存（有上限），
+ * 就绪时先补发暂存消息再放行后续消息；就绪前会话已关闭则由调用方摘除。
+ */
+final class PendingSession {
+    private final ViewerSink sink;
+    private final int limit;
+    // 暂存的消息：ByteBuffer（二进制，已拷贝）或 String（文本）
+    private final ArrayDeque<Object> early = new ArrayDeque<>();
+    private DeviceStream stream;
+    private boolean closed;
+    private int buffered;
+    private int dropped;
+
+    PendingSession(ViewerSink sink, int limit) {
+        this.sink = sink;
+        this.limit = Math.max(0, limit);
+    }
+
+    /**
+     * 转发或暂存一条二进制消息；payload 只在调用期间有效，暂存时拷贝。
+     */
+    synchronized void sendBinary(ByteBuffer payload) {
+        if (stream != null) {
+            stream.sendBinary(sink, payload);
+            return;
+        }
+        if (hold()) {
+            ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+            copy.put(payload.duplicate()).flip();
+            early.addLast(copy);
+        }
+    }
+
+    synchronized void sendText(String text) {
+        if (stream != null) {
+            stream.sendText(text);
+            return;
+        }
+        if (hold()) {
+            early.addLast(text);
+        }
+    }
+
+    /**
+     * 上行就绪：按到达顺序补发暂存消息。会话已关闭时返回 false，由调用方从设备流摘除。
+     */
+    synchronized boolean ready(DeviceStream stream) {
+        if (closed) {
+            return false;
+        }
+        Object message;
+        while ((message = early.pollFirst()) != null) {
+            if (message instanceof ByteBuffer payload) {
+                stream.sendBinary(sink, payload);
+            } else {
+                stream.sendText((String) message);
+            }
+        }
+        this.stream = stream;
+        return true;
+    }
+
+    /**
+     * 会话关闭：丢弃暂存消息，返回已挂上的设备流（尚未就绪时为 null）。
+     */
+    synchronized DeviceStream close() {
+        closed = true;
+        early.clear();
+        return stream;
+    }
+
+    ViewerSink sink() {
+        return sink;
+    }
+
+    synchronized int buffered() {
+        return buffered;
+    }
+
+    synchronized int dropped() {
+        return dropped;
+    }
+
+    private boolean hold() {
+        if (closed) {
+            return false;
+        }
+        if (early.size() >= limit) {
+            dropped++;
+            return false;
+        }
+        buffered++;
+        return true;
+    }
+}
@@ -0,0 +1,117 @@
+package com.controlphonedesk.web;
+
+import com.controlphonedesk.stream.StreamFormat;
+import com.controlphonedesk.stream.ViewerSink;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+import org.springframework.web.socket.CloseStatus;
+
+/**
+ * 设备墙连接上的一个设备通道，作为该设备流的一个观看者。
+ * 关闭只结束本通道（通知浏览器并从设备流摘除），不影响同一连接上的其他通道。
+ */
+final class WallChannel implements ViewerSink {
+    private final WallConnection connection;
+    private final int id;
+    private final String udid;
+    private final ByteBuffer header;
+    private final PendingSession pending;
+    private final Consumer<WallChannel> onClosed;
+    private final boolean preview;
+    private final StreamFormat format;
+    private volatile int qualityFloor;
+
+    WallChannel(
+        WallConnection connection,
+        int id,
+        String udid,
+        int qualityFloor,
+        boolean preview,
+        StreamFormat format,
+        int earlyMessageLimit,
+        Consumer<WallChannel> onClosed
+    ) {
+        this.connection = connection;
+        this.id = id;
+        this.udid = udid;
+        this.qualityFloor = qualityFloor;
+        this.preview = preview;
+        this.format = format;
+        this.onClosed = onClosed;
+        this.header = ByteBuffer.allocate(2).putShort(0, (short) id);
+        this.pending = new PendingSession(this, earlyMessageLimit);
+    }
+
+    /**
+     * 画质提示对应的自适应码率档位：high 为原画质，medium、low 依次降低；无法识别时返回 -1。
+     */
+    static int qualityFloor(String quality) {
+        if (quality == null || quality.isBlank() || "high".equalsIgnoreCase(quality)) {
+            return 0;
+        }
+        if ("medium".equalsIgnoreCase(quality)) {
+            return 2;
+        }
+        if ("low".equalsIgnoreCase(quality)) {
+            return 4;
+        }
+        return -1;
+    }
+
+    int channelId() {
+        return id;
+    }
+
+    String udid() {
+        return udid;
+    }
+
+    PendingSession pending() {
+        return pending;
+    }
+
+    void setQualityFloor(int qualityFloor) {
+        this.qualityFloor = qualityFloor;
+    }
+
+    @Override
+    public String id() {
+        return connection.session().getId() + "#" + id;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return connection.isOpen() && connection.channels().get(id) == this;
+    }
+
+    @Override
+    public void sendBinary(ByteBuffer payload) throws IOException {
+        connection.sendFrame(header, payload);
+    }
+
+    @Override
+    public void sendText(String text) throws IOException {
+        connection.sendEvent("text", id, "data", text);
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+        onClosed.accept(this);
+    }
+
+    @Override
+    public int qualityFloor() {
+        return qualityFloor;
+    }
+
+    @Override
+    public boolean preview() {
+        return preview;
+    }
+
+    @Override
+    public StreamFormat format() {
+        return format;
+    }
+}
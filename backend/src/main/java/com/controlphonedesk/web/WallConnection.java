@@ -0,0 +1,86 @@
+package com.controlphonedesk.web;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * 一条设备墙 WebSocket 连接：承载多个设备通道，各通道的写线程通过同一把锁串行写出，
+ * 一条画面消息的通道头与内容作为同一消息的两个分片连续发送，不拷贝画面数据。
+ */
+final class WallConnection {
+    private final WebSocketSession session;
+    private final JsonMapper jsonMapper;
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private final Map<Integer, WallChannel> channels = new ConcurrentHashMap<>();
+
+    WallConnection(WebSocketSession session, JsonMapper jsonMapper) {
+        this.session = session;
+        this.jsonMapper = jsonMapper;
+    }
+
+    WebSocketSession session() {
+        return session;
+    }
+
+    Map<Integer, WallChannel> channels() {
+        return channels;
+    }
+
+    boolean isOpen() {
+        return session.isOpen();
+    }
+
+    /**
+     * 发送一帧设备数据：[通道号 u16][原始消息]。header 由通道独占，这里只负责重置读位置。
+     */
+    void sendFrame(ByteBuffer header, ByteBuffer payload) throws IOException {
+        sendLock.lock();
+        try {
+            header.clear();
+            session.sendMessage(new BinaryMessage(header, false));
+            session.sendMessage(new BinaryMessage(payload, true));
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * 发送 JSON 事件，如 {"event":"subscribed","channel":1,"udid":"..."}；value 为 null 的字段省略。
+     */
+    void sendEvent(String event, int channel, String key, Object value) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("event", event);
+        body.put("channel", channel);
+        if (key != null && value != null) {
+            body.put(key, value);
+        }
+        String text = jsonMapper.writeValueAsString(body);
+        sendLock.lock();
+        try {
+            session.sendMessage(new TextMessage(text));
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * 通知类事件，连接已断开时忽略失败。
+     */
+    void sendEventQuietly(String event, int channel, String key, Object value) {
+        if (!session.isOpen()) {
+            return;
+        }
+        try {
+            sendEvent(event, channel, key, value);
+        } catch (Exception ignored) {
+        }
+    }
+}
@@ -10,15 +10,18 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
     private final ScrcpyWebSocketProxyHandler scrcpyHandler;
+    private final DeviceWallWebSocketHandler wallHandler;
     private final AppProperties properties;
     private final com.controlphonedesk.auth.WebSocketAuthInterceptor authInterceptor;
 
     public WebSocketConfig(
         ScrcpyWebSocketProxyHandler scrcpyHandler,
+        DeviceWallWebSocketHandler wallHandler,
         AppProperties properties,
         com.controlphonedesk.auth.WebSocketAuthInterceptor authInterceptor
     ) {
         this.scrcpyHandler = scrcpyHandler;
+        this.wallHandler = wallHandler;
         this.properties = properties;
         this.authInterceptor = authInterceptor;
     }
@@ -28,6 +31,7 @@ public class WebSocketConfig implements WebSocketConfigurer {
         String[] origins = properties.getCors().getAllowedOrigins().toArray(new String[0]);
         String[] patterns = properties.getCors().getAllowedOriginPatterns().toArray(new String[0]);
         var registration = registry.addHandler(scrcpyHandler, "/ws/scrcpy")
+            .addHandler(wallHandler, "/ws/wall")
             .addInterceptors(authInterceptor);
         if (patterns.length > 0) {
             registration.setAllowedOriginPatterns(patterns);
@@ -0,0 +1,92 @@
+package com.controlphonedesk.web;
+
+import com.controlphonedesk.rbac.seed.DefaultPermissions;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * WebSocket 处理器共用的会话工具：查询参数、握手拦截器写入的登录信息与设备范围判断。
+ */
+final class WebSocketSessions {
+    private WebSocketSessions() {
+    }
+
+    /**
+     * 从 WebSocket URL 查询参数获取 udid 等值。
+     */
+    static String getQueryParam(WebSocketSession session, String name) {
+        if (session.getUri() == null || session.getUri().getQuery() == null) {
+            return null;
+        }
+        String query = session.getUri().getQuery();
+        for (String pair : query.split("&")) {
+            String[] parts = pair.split("=");
+            if (parts.length == 2 && parts[0].equals(name)) {
+                return URLDecoder.decode(parts[1], StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    static Long getSessionUserId(WebSocketSession session) {
+        Object uid = session.getAttributes().get("uid");
+        if (uid instanceof Number number) {
+            return number.longValue();
+        }
+        if (uid instanceof String text) {
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException ignored) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 是否需要按用户设备范围限制访问（超级管理员与设备/分组管理权限不受限）。
+     */
+    static boolean shouldApplyScope(WebSocketSession session) {
+        Object superAdmin = session.getAttributes().get("superAdmin");
+        if (Boolean.TRUE.equals(superAdmin)) {
+            return false;
+        }
+        Set<String> permissions = getSessionPermissions(session);
+        if (permissions.isEmpty()) {
+            return true;
+        }
+        return !(permissions.contains(DefaultPermissions.DEVICE_UPDATE)
+            || permissions.contains(DefaultPermissions.GROUP_CREATE)
+            || permissions.contains(DefaultPermissions.GROUP_UPDATE)
+            || permissions.contains(DefaultPermissions.GROUP_DELETE));
+    }
+
+    @SuppressWarnings("unchecked")
+    static Set<String> getSessionPermissions(WebSocketSession session) {
+        Object perms = session.getAttributes().get("permissions");
+        if (perms instanceof Set<?> set) {
+            return (Set<String>) set;
+        }
+        return Set.of();
+    }
+
+    static void closeQuietly(WebSocketSession session, CloseStatus status) {
+        try {
+            if (session.isOpen()) {
+                session.close(status);
+            }
+        } catch (Exception ignored) {
+        }
+    }
+
+    static String rootMessage(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+}
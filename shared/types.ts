@@ -12,6 +12,8 @@ export type DeviceInfo = {
   androidSdk: string;
   abi: string;
   interfaces: NetInterfaceInfo[];
+  stale?: boolean;
+  staleReason?: string | null;
 };
 
 export type RoleInfo = {